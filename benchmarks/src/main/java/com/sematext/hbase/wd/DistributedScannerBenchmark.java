@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures cost of merging buckets' rows on the client side depending on the number of buckets and key size.
+ * Scanners are in-memory, so that only cost of the merge is measured. Score is in rows per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistributedScannerBenchmark {
+  private static final int ROWS_COUNT = 100000;
+
+  @Param({"1", "16", "64", "256"})
+  public int bucketsCount;
+
+  @Param({"8", "64"})
+  public int keySize;
+
+  @Param({"1", "100"})
+  public int refillSize;
+
+  private AbstractRowKeyDistributor keyDistributor;
+  private List<List<Result>> buckets;
+
+  @Setup
+  public void setUp() {
+    keyDistributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(bucketsCount));
+    List<byte[]> originalKeys = new ArrayList<byte[]>(ROWS_COUNT);
+    long origKeyPrefix = System.currentTimeMillis();
+    for (int i = 0; i < ROWS_COUNT; i++) {
+      // sequential (time-series like) keys padded to the key size, varying bytes are trailing ones as only they
+      // affect the hash
+      originalKeys.add(Bytes.add(new byte[keySize - Bytes.SIZEOF_LONG], Bytes.toBytes(origKeyPrefix + i)));
+    }
+    buckets = InMemoryResultScanner.distribute(keyDistributor, originalKeys);
+    for (int i = 0; i < buckets.size(); i++) {
+      if (buckets.get(i).isEmpty()) {
+        throw new IllegalStateException("Rows are not spread over all buckets, bucket " + i + " is empty");
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS_COUNT)
+  public int merge() throws IOException {
+    DistributedScanner scanner =
+            new DistributedScanner(keyDistributor, InMemoryResultScanner.createScanners(buckets), refillSize);
+    int count = 0;
+    while (scanner.next() != null) {
+      count++;
+    }
+    scanner.close();
+    if (count != ROWS_COUNT) {
+      throw new IllegalStateException("Expected " + ROWS_COUNT + " rows, got " + count);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures cost of computing hash prefix by each of the {@link RowKeyDistributorByHashPrefix.Hasher} implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HasherBenchmark {
+  private static final int KEYS_COUNT = 1024;
+
+  @Param({"oneByteSimpleHash", "murmurHash"})
+  public String hasher;
+
+  @Param({"16", "256"})
+  public int bucketsCount;
+
+  @Param({"8", "16", "64", "256"})
+  public int keySize;
+
+  private RowKeyDistributorByHashPrefix.Hasher keyHasher;
+  private byte[][] originalKeys;
+  private int pos = 0;
+
+  @Setup
+  public void setUp() {
+    if ("oneByteSimpleHash".equals(hasher)) {
+      keyHasher = new RowKeyDistributorByHashPrefix.OneByteSimpleHash(bucketsCount);
+    } else if ("murmurHash".equals(hasher)) {
+      keyHasher = new RowKeyDistributorByHashPrefix.MurmurHash(bucketsCount);
+    } else {
+      throw new IllegalArgumentException("Unknown hasher: " + hasher);
+    }
+
+    Random random = new Random(11);
+    originalKeys = new byte[KEYS_COUNT][];
+    for (int i = 0; i < KEYS_COUNT; i++) {
+      originalKeys[i] = new byte[keySize];
+      random.nextBytes(originalKeys[i]);
+    }
+  }
+
+  @Benchmark
+  public byte[] getHashPrefix() {
+    pos = (pos + 1) & (KEYS_COUNT - 1);
+    return keyHasher.getHashPrefix(originalKeys[pos]);
+  }
+}
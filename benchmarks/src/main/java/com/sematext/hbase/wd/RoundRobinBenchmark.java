@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures throughput of {@link RowKeyDistributorByOneBytePrefix} shared between writing threads. Run with main() to
+ * get numbers for 1, 2, 4, 8 and 16 threads, or with "-t" option of JMH runner for a particular threads count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundRobinBenchmark {
+  private static final int[] THREADS_COUNTS = {1, 2, 4, 8, 16};
+
+  private final RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 32);
+  private final byte[] originalKey = new byte[16];
+
+  @Benchmark
+  public byte[] getDistributedKey() {
+    return keyDistributor.getDistributedKey(originalKey);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threadsCount : THREADS_COUNTS) {
+      new Runner(new OptionsBuilder()
+              .include(RoundRobinBenchmark.class.getSimpleName())
+              .threads(threadsCount)
+              .build()).run();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures cost of the per-row operations of the distributors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowKeyDistributorBenchmark {
+  private static final int KEYS_COUNT = 1024;
+
+  @Param({"oneBytePrefix", "oneByteSimpleHash", "murmurHash"})
+  public String distributor;
+
+  @Param({"16", "100"})
+  public int bucketsCount;
+
+  @Param({"8", "64"})
+  public int keySize;
+
+  private AbstractRowKeyDistributor keyDistributor;
+  private byte[][] originalKeys;
+  private byte[][] distributedKeys;
+  private final ImmutableBytesWritable originalKeyView = new ImmutableBytesWritable();
+  private int pos = 0;
+
+  static AbstractRowKeyDistributor createDistributor(String name, int bucketsCount) {
+    if ("oneBytePrefix".equals(name)) {
+      return new RowKeyDistributorByOneBytePrefix((byte) bucketsCount);
+    } else if ("oneByteSimpleHash".equals(name)) {
+      return new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(bucketsCount));
+    } else if ("murmurHash".equals(name)) {
+      return new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.MurmurHash(bucketsCount));
+    }
+    throw new IllegalArgumentException("Unknown distributor: " + name);
+  }
+
+  @Setup
+  public void setUp() {
+    keyDistributor = createDistributor(distributor, bucketsCount);
+    Random random = new Random(11);
+    originalKeys = new byte[KEYS_COUNT][];
+    distributedKeys = new byte[KEYS_COUNT][];
+    for (int i = 0; i < KEYS_COUNT; i++) {
+      originalKeys[i] = new byte[keySize];
+      random.nextBytes(originalKeys[i]);
+      distributedKeys[i] = keyDistributor.getDistributedKey(originalKeys[i]);
+    }
+  }
+
+  private int nextPos() {
+    pos = (pos + 1) & (KEYS_COUNT - 1);
+    return pos;
+  }
+
+  @Benchmark
+  public byte[] getDistributedKey() {
+    return keyDistributor.getDistributedKey(originalKeys[nextPos()]);
+  }
+
+  @Benchmark
+  public byte[] getOriginalKey() {
+    return keyDistributor.getOriginalKey(distributedKeys[nextPos()]);
+  }
+
+  @Benchmark
+  public ImmutableBytesWritable getOriginalKeyView() {
+    keyDistributor.getOriginalKey(distributedKeys[nextPos()], originalKeyView);
+    return originalKeyView;
+  }
+
+  @Benchmark
+  public byte[][] getAllDistributedKeys() {
+    return keyDistributor.getAllDistributedKeys(originalKeys[nextPos()]);
+  }
+
+  @Benchmark
+  public Pair<byte[], byte[]>[] getDistributedIntervals() {
+    int start = nextPos();
+    return keyDistributor.getDistributedIntervals(originalKeys[start], originalKeys[(start + 1) & (KEYS_COUNT - 1)]);
+  }
+}
@@ -17,10 +17,12 @@ package com.sematext.hbase.wd;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Comparator;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
 
@@ -36,6 +38,93 @@ public abstract class AbstractRowKeyDistributor implements Parametrizable {
 
   public abstract byte[][] getAllDistributedKeys(byte[] originalKey);
 
+  /**
+   * Tells whether the original key is kept unmodified at the end of the distributed key, i.e. the distributed key is the
+   * original key with a prefix of {@link #getPrefixLength(byte[])} bytes. Only then original keys are accessed and
+   * compared in place, without copying them with {@link #getOriginalKey(byte[])}. Default implementation returns false,
+   * distributors which only add a prefix should override it together with {@link #getPrefixLength(byte[])}.
+   */
+  public boolean hasSuffixOriginalKey() {
+    return false;
+  }
+
+  /**
+   * Tells whether {@link #getDistributedKey(byte[])} returns the same distributed key for the same original key each
+   * time, so that records can be accessed by it. Default implementation returns true, distributors which choose bucket
+   * in other way (e.g. round-robin) must override it.
+   */
+  public boolean isKeyDeterministic() {
+    return true;
+  }
+
+  /**
+   * Gets the length of the prefix which was added to the original key. Only meaningful when
+   * {@link #hasSuffixOriginalKey()} is true. Default implementation copies the original key, distributors should
+   * override it when they can tell the length without that.
+   * @param adjustedKey distributed key
+   * @return number of leading bytes of the distributed key which don't belong to the original key
+   */
+  public int getPrefixLength(byte[] adjustedKey) {
+    return adjustedKey.length - getOriginalKey(adjustedKey).length;
+  }
+
+  /**
+   * Points holder to the original key part of the distributed key, without copying it when
+   * {@link #hasSuffixOriginalKey()} is true. Holders can be compared with
+   * {@link ImmutableBytesWritable#compareTo(ImmutableBytesWritable)} which doesn't copy either.
+   * @param adjustedKey distributed key
+   * @param originalKey holder to set to (array, offset, length) view of the original key
+   */
+  public void getOriginalKey(byte[] adjustedKey, ImmutableBytesWritable originalKey) {
+    if (!hasSuffixOriginalKey()) {
+      originalKey.set(getOriginalKey(adjustedKey));
+      return;
+    }
+    int prefixLength = getPrefixLength(adjustedKey);
+    originalKey.set(adjustedKey, prefixLength, adjustedKey.length - prefixLength);
+  }
+
+  /**
+   * Compares distributed keys by their original keys, without copying them when {@link #hasSuffixOriginalKey()} is
+   * true.
+   * @param adjustedKey1 first distributed key
+   * @param adjustedKey2 second distributed key
+   * @return negative, 0 or positive value if the first original key is less, equal or greater than the second one
+   */
+  public int compareOriginalKeys(byte[] adjustedKey1, byte[] adjustedKey2) {
+    if (!hasSuffixOriginalKey()) {
+      return Bytes.compareTo(getOriginalKey(adjustedKey1), getOriginalKey(adjustedKey2));
+    }
+    int prefixLength1 = getPrefixLength(adjustedKey1);
+    int prefixLength2 = getPrefixLength(adjustedKey2);
+    return Bytes.compareTo(adjustedKey1, prefixLength1, adjustedKey1.length - prefixLength1,
+                           adjustedKey2, prefixLength2, adjustedKey2.length - prefixLength2);
+  }
+
+  /**
+   * Compares distributed keys of the given original keys, which are passed as (array, offset, length) views.
+   * Default implementation copies the original keys and builds both distributed keys, distributors should override it
+   * when they can compare them without that.
+   * @return negative, 0 or positive value if the first distributed key is less, equal or greater than the second one
+   */
+  public int compareDistributedKeys(byte[] originalKey1, int offset1, int length1,
+                                    byte[] originalKey2, int offset2, int length2) {
+    return Bytes.compareTo(getDistributedKey(Arrays.copyOfRange(originalKey1, offset1, offset1 + length1)),
+                           getDistributedKey(Arrays.copyOfRange(originalKey2, offset2, offset2 + length2)));
+  }
+
+  /**
+   * @return comparator which orders distributed keys by their original keys
+   */
+  public Comparator<byte[]> getOriginalKeyComparator() {
+    return new Comparator<byte[]>() {
+      @Override
+      public int compare(byte[] adjustedKey1, byte[] adjustedKey2) {
+        return compareOriginalKeys(adjustedKey1, adjustedKey2);
+      }
+    };
+  }
+
   /**
    * Gets all distributed intervals based on the original start & stop keys.
    * Used when scanning all buckets based on start/stop row keys. Should return keys so that all buckets in which
@@ -0,0 +1,311 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Computes aggregates over the data written with keys distribution. Buckets are scanned in parallel (rows order
+ * doesn't matter) and each bucket's partial result is computed by its own task (up to {@link #MAX_THREADS} buckets at
+ * once), partial results are merged at the end. {@link DistributedScanner#COALESCE_BY_REGION}, {@link DistributedScanner#MAX_BUFFERED_ROWS} and
+ * {@link DistributedScanner#MAX_BUFFERED_BYTES} are honoured.
+ */
+public final class DistributedAggregations {
+  /**
+   * Max number of buckets aggregated concurrently, 0 (default) for all of them at once. Not used when executor is
+   * passed to {@link #aggregate(HTable, Scan, AbstractRowKeyDistributor, Aggregator, ExecutorService)}.
+   */
+  public static final String MAX_THREADS = "hbase.client.scan.wd.aggregate.max.threads";
+
+  /**
+   * Aggregation logic. Partial results of different buckets are computed concurrently, so implementation should not
+   * share mutable state between partial results.
+   * @param <T> type of the (partial) result
+   */
+  public static interface Aggregator<T> {
+    /** @return partial result of no rows */
+    T createPartial();
+
+    /** @return partial result with the row added */
+    T add(T partial, Result row);
+
+    /** @return result which combines both partial results */
+    T merge(T partial1, T partial2);
+  }
+
+  private DistributedAggregations() {}
+
+  /**
+   * Counts rows. Only first KeyValue of each row is fetched when scan has no filter.
+   * @param hTable table to read from
+   * @param originalScan scan over the original keys
+   * @param keyDistributor distributor records were written with
+   * @return number of rows
+   * @throws IOException if scanning failed
+   */
+  public static long count(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    Scan scan = new Scan(originalScan);
+    if (scan.getFilter() == null) {
+      scan.setFilter(new FirstKeyOnlyFilter());
+    }
+    return aggregate(hTable, scan, keyDistributor, new CountAggregator());
+  }
+
+  /**
+   * Sums column values, which are longs (as written by {@link HTable#incrementColumnValue}). The column is added to
+   * the scan's columns, so only it is fetched when the scan selects no other columns.
+   * @return sum of the values, 0 if there are none
+   * @throws IOException if scanning failed
+   */
+  public static long sum(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                         byte[] family, byte[] qualifier) throws IOException {
+    return aggregate(hTable, project(originalScan, family, qualifier), keyDistributor,
+            new SumAggregator(family, qualifier));
+  }
+
+  /**
+   * Finds min of the column values, which are longs. The column is added to the scan's columns, see
+   * {@link #sum(HTable, Scan, AbstractRowKeyDistributor, byte[], byte[])}.
+   * @return min of the values, null if there are none
+   * @throws IOException if scanning failed
+   */
+  public static Long min(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                         byte[] family, byte[] qualifier) throws IOException {
+    return aggregate(hTable, project(originalScan, family, qualifier), keyDistributor,
+            new MinMaxAggregator(family, qualifier, false));
+  }
+
+  /**
+   * Finds max of the column values, which are longs. The column is added to the scan's columns, see
+   * {@link #sum(HTable, Scan, AbstractRowKeyDistributor, byte[], byte[])}.
+   * @return max of the values, null if there are none
+   * @throws IOException if scanning failed
+   */
+  public static Long max(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                         byte[] family, byte[] qualifier) throws IOException {
+    return aggregate(hTable, project(originalScan, family, qualifier), keyDistributor,
+            new MinMaxAggregator(family, qualifier, true));
+  }
+
+  /**
+   * Computes aggregate with custom logic. Scan should fetch only data needed for the aggregation.
+   * @param hTable table to read from
+   * @param originalScan scan over the original keys
+   * @param keyDistributor distributor records were written with
+   * @param aggregator aggregation logic
+   * @return aggregate of all rows
+   * @throws IOException if scanning failed
+   */
+  public static <T> T aggregate(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                                Aggregator<T> aggregator) throws IOException {
+    List<Callable<ResultScanner>> scanners = getScannerOpeners(hTable, originalScan, keyDistributor);
+    int maxThreads = hTable.getConfiguration().getInt(MAX_THREADS, 0);
+    int threads = maxThreads > 0 ? Math.min(maxThreads, scanners.size()) : scanners.size();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+            new DaemonThreadFactory("wd-aggregate"));
+    try {
+      return aggregate(scanners, aggregator, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Computes aggregate with custom logic, buckets are aggregated by the given executor's threads. Use it to share
+   * threads between frequent aggregations.
+   * @param executor executor to run buckets' workers with, is not shut down by this method
+   * @see #aggregate(HTable, Scan, AbstractRowKeyDistributor, Aggregator)
+   */
+  public static <T> T aggregate(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                                Aggregator<T> aggregator, ExecutorService executor) throws IOException {
+    return aggregate(getScannerOpeners(hTable, originalScan, keyDistributor), aggregator, executor);
+  }
+
+  /**
+   * @return tasks opening buckets' scanners, so that scanner is opened only when its bucket's task starts and server
+   * side scanners of the buckets waiting for a thread don't expire
+   */
+  private static List<Callable<ResultScanner>> getScannerOpeners(final HTable hTable, Scan originalScan,
+                                                                 AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    Scan[] scans = hTable.getConfiguration().getBoolean(DistributedScanner.COALESCE_BY_REGION, false) ?
+            RegionScanPlanner.getScans(hTable, originalScan, keyDistributor) :
+            keyDistributor.getDistributedScans(originalScan);
+    DistributedScanner.setBucketCaching(hTable, originalScan, scans, 0, false);
+    List<Callable<ResultScanner>> openers = new ArrayList<Callable<ResultScanner>>(scans.length);
+    for (final Scan scan : scans) {
+      openers.add(new Callable<ResultScanner>() {
+        @Override
+        public ResultScanner call() throws IOException {
+          return DistributedScanner.openScanners(hTable, new Scan[] {scan})[0];
+        }
+      });
+    }
+    return openers;
+  }
+
+  /**
+   * Aggregates rows of the scanners, each scanner is opened and drained by its own task.
+   * @param scanners tasks opening scanners to drain (null scanner has no rows), scanners are closed by this method
+   * @param aggregator aggregation logic
+   * @param executor executor to run the tasks with
+   * @return aggregate of all rows
+   * @throws IOException if any of the scanners failed
+   */
+  static <T> T aggregate(List<Callable<ResultScanner>> scanners, final Aggregator<T> aggregator,
+                         ExecutorService executor) throws IOException {
+    // tells workers to stop when the aggregation has failed
+    final AtomicBoolean cancelled = new AtomicBoolean(false);
+    try {
+      List<Future<T>> partials = new ArrayList<Future<T>>(scanners.size());
+      for (final Callable<ResultScanner> opener : scanners) {
+        partials.add(executor.submit(new Callable<T>() {
+          @Override
+          public T call() throws Exception {
+            T partial = aggregator.createPartial();
+            ResultScanner scanner = cancelled.get() ? null : opener.call();
+            if (scanner == null) {
+              return partial;
+            }
+            try {
+              Result row;
+              while (!cancelled.get() && (row = scanner.next()) != null) {
+                partial = aggregator.add(partial, row);
+              }
+              return partial;
+            } finally {
+              scanner.close();
+            }
+          }
+        }));
+      }
+
+      T result = aggregator.createPartial();
+      for (Future<T> partial : partials) {
+        result = aggregator.merge(result, partial.get());
+      }
+      return result;
+    } catch (InterruptedException e) {
+      cancelled.set(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for partial results");
+    } catch (ExecutionException e) {
+      cancelled.set(true);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Aggregation failed", e.getCause());
+    }
+  }
+
+  private static Scan project(Scan originalScan, byte[] family, byte[] qualifier) throws IOException {
+    Scan scan = new Scan(originalScan);
+    scan.addColumn(family, qualifier);
+    return scan;
+  }
+
+  private static class CountAggregator implements Aggregator<Long> {
+    @Override
+    public Long createPartial() {
+      return 0L;
+    }
+
+    @Override
+    public Long add(Long partial, Result row) {
+      return partial + 1;
+    }
+
+    @Override
+    public Long merge(Long partial1, Long partial2) {
+      return partial1 + partial2;
+    }
+  }
+
+  private static class SumAggregator implements Aggregator<Long> {
+    private final byte[] family;
+    private final byte[] qualifier;
+
+    SumAggregator(byte[] family, byte[] qualifier) {
+      this.family = family;
+      this.qualifier = qualifier;
+    }
+
+    @Override
+    public Long createPartial() {
+      return 0L;
+    }
+
+    @Override
+    public Long add(Long partial, Result row) {
+      byte[] value = row.getValue(family, qualifier);
+      return value == null ? partial : partial + Bytes.toLong(value);
+    }
+
+    @Override
+    public Long merge(Long partial1, Long partial2) {
+      return partial1 + partial2;
+    }
+  }
+
+  private static class MinMaxAggregator implements Aggregator<Long> {
+    private final byte[] family;
+    private final byte[] qualifier;
+    private final boolean max;
+
+    MinMaxAggregator(byte[] family, byte[] qualifier, boolean max) {
+      this.family = family;
+      this.qualifier = qualifier;
+      this.max = max;
+    }
+
+    @Override
+    public Long createPartial() {
+      // no values yet
+      return null;
+    }
+
+    @Override
+    public Long add(Long partial, Result row) {
+      byte[] value = row.getValue(family, qualifier);
+      return value == null ? partial : merge(partial, Bytes.toLong(value));
+    }
+
+    @Override
+    public Long merge(Long partial1, Long partial2) {
+      if (partial1 == null || partial2 == null) {
+        return partial1 == null ? partial2 : partial1;
+      }
+      return max ? Math.max(partial1, partial2) : Math.min(partial1, partial2);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Sharded counters: increments of a counter are spread over the buckets of the row key distributor (each bucket
+ * holds a shard of the counter), so that a hot counter doesn't load a single region. Counter value is the sum of all
+ * its shards.
+ */
+public final class DistributedCounters {
+  // java.util.Random is thread-safe, but contended when shared
+  private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
+
+  private DistributedCounters() {}
+
+  /**
+   * Increments randomly chosen shard of the counter.
+   * @param hTable table holding the counter
+   * @param counterKey original key of the counter
+   * @param family column family of the counter
+   * @param qualifier column qualifier of the counter
+   * @param amount amount to increment by
+   * @param keyDistributor distributor which defines counter shards
+   * @throws IOException if incrementing failed
+   */
+  public static void increment(HTable hTable, byte[] counterKey, byte[] family, byte[] qualifier, long amount,
+                               AbstractRowKeyDistributor keyDistributor) throws IOException {
+    byte[][] shards = keyDistributor.getAllDistributedKeys(counterKey);
+    hTable.incrementColumnValue(shards[RANDOM.get().nextInt(shards.length)], family, qualifier, amount);
+  }
+
+  /**
+   * Reads the counter value: reads all its shards with one batch of gets.
+   * @return counter value, 0 if counter was never incremented
+   * @throws IOException if reading failed
+   */
+  public static long get(HTable hTable, byte[] counterKey, byte[] family, byte[] qualifier,
+                         AbstractRowKeyDistributor keyDistributor) throws IOException {
+    return sum(DistributedGets.getAll(hTable, createGet(counterKey, family, qualifier), keyDistributor),
+            family, qualifier);
+  }
+
+  /**
+   * Reads values of many counters, gets for all shards of all counters are sent in batches.
+   * @return counters values keyed by their original keys, counters which were never incremented are not included
+   * @throws IOException if reading failed
+   */
+  public static Map<byte[], Long> get(HTable hTable, List<byte[]> counterKeys, byte[] family, byte[] qualifier,
+                                      AbstractRowKeyDistributor keyDistributor) throws IOException {
+    List<Get> gets = new ArrayList<Get>(counterKeys.size());
+    for (byte[] counterKey : counterKeys) {
+      gets.add(createGet(counterKey, family, qualifier));
+    }
+
+    Map<byte[], Long> values = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], List<Result>> shards : DistributedGets.getAll(hTable, gets, keyDistributor).entrySet()) {
+      List<Result> results = shards.getValue();
+      values.put(shards.getKey(), sum(results.toArray(new Result[results.size()]), family, qualifier));
+    }
+    return values;
+  }
+
+  private static Get createGet(byte[] counterKey, byte[] family, byte[] qualifier) {
+    Get get = new Get(counterKey);
+    get.addColumn(family, qualifier);
+    return get;
+  }
+
+  private static long sum(Result[] shards, byte[] family, byte[] qualifier) {
+    long sum = 0;
+    for (Result shard : shards) {
+      byte[] value = shard.getValue(family, qualifier);
+      if (value != null) {
+        sum += Bytes.toLong(value);
+      }
+    }
+    return sum;
+  }
+}
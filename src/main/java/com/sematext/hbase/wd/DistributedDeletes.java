@@ -0,0 +1,224 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+
+/**
+ * Deletes ranges of the original keys from all buckets in parallel: each bucket is scanned (only row keys are
+ * fetched) and its rows are deleted in batches by its own thread with its own table instance.
+ */
+public final class DistributedDeletes {
+  /** Number of rows fetched and deleted in one batch by each bucket's worker */
+  public static final String BATCH_SIZE = "hbase.client.write.wd.delete.batch.size";
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  /** Max number of rows deleted per second by all buckets' workers together, 0 (default) for no limit */
+  public static final String MAX_ROWS_PER_SECOND = "hbase.client.write.wd.delete.max.rows.per.second";
+  /** Max number of buckets deleted concurrently, 0 (default) for all of them at once */
+  public static final String MAX_THREADS = "hbase.client.write.wd.delete.max.threads";
+
+  /**
+   * Receives deletion progress. Is called by buckets' workers (i.e. from different threads) after each batch.
+   */
+  public static interface ProgressListener {
+    /**
+     * @param deletedRows number of rows deleted so far by all buckets' workers
+     */
+    void progress(long deletedRows);
+  }
+
+  private DistributedDeletes() {}
+
+  /**
+   * Deletes rows of the original keys range, see {@link #deleteRange(HTable, Scan, AbstractRowKeyDistributor,
+   * ProgressListener)}.
+   */
+  public static long deleteRange(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    return deleteRange(hTable, originalScan, keyDistributor, null);
+  }
+
+  /**
+   * Deletes rows of the original keys range. When scan has families set only these families are deleted (only the
+   * selected columns of the families with columns selected), otherwise whole rows are. Rows which don't pass the
+   * scan's filter are not deleted.
+   * {@link DistributedScanner#COALESCE_BY_REGION} is honoured.
+   * @param hTable table to delete from
+   * @param originalScan scan over the original keys to delete
+   * @param keyDistributor distributor records were written with
+   * @param listener listener to report progress to, can be null
+   * @return number of deleted rows
+   * @throws IOException if deleting failed, some of the rows may have been deleted
+   */
+  public static long deleteRange(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                                 final ProgressListener listener) throws IOException {
+    final Configuration conf = hTable.getConfiguration();
+    final byte[] tableName = hTable.getTableName();
+    final Map<byte[], NavigableSet<byte[]>> columns = originalScan.hasFamilies() ? originalScan.getFamilyMap() : null;
+
+    Scan keysScan = new Scan(originalScan);
+    if (keysScan.getFilter() == null) {
+      // only row keys are needed
+      keysScan.setFilter(new FirstKeyOnlyFilter());
+    }
+    Scan[] scans = conf.getBoolean(DistributedScanner.COALESCE_BY_REGION, false) ?
+            RegionScanPlanner.getScans(hTable, keysScan, keyDistributor) :
+            keyDistributor.getDistributedScans(keysScan);
+    final int batchSize = conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+    for (Scan scan : scans) {
+      scan.setCaching(batchSize);
+    }
+
+    final Throttle throttle = new Throttle(conf.getLong(MAX_ROWS_PER_SECOND, 0));
+    final AtomicLong deletedRows = new AtomicLong(0);
+    // tells workers to stop when deletion has failed
+    final AtomicBoolean cancelled = new AtomicBoolean(false);
+    int maxThreads = conf.getInt(MAX_THREADS, 0);
+    int threads = maxThreads > 0 ? Math.min(maxThreads, scans.length) : scans.length;
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new DaemonThreadFactory("wd-delete"));
+    try {
+      List<Future<Void>> workers = new ArrayList<Future<Void>>(scans.length);
+      for (final Scan scan : scans) {
+        workers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            // HTable is not thread-safe, each worker uses its own
+            HTable table = new HTable(conf, tableName);
+            ResultScanner scanner = null;
+            try {
+              scanner = table.getScanner(scan);
+              Result[] rows;
+              while (!cancelled.get() && (rows = scanner.next(batchSize)).length > 0) {
+                throttle.acquire(rows.length);
+                List<Delete> deletes = new ArrayList<Delete>(rows.length);
+                for (Result row : rows) {
+                  deletes.add(createDelete(row.getRow(), columns));
+                }
+                table.delete(deletes);
+                long deleted = deletedRows.addAndGet(rows.length);
+                if (listener != null) {
+                  listener.progress(deleted);
+                }
+              }
+              return null;
+            } finally {
+              if (scanner != null) {
+                scanner.close();
+              }
+              table.close();
+            }
+          }
+        }));
+      }
+
+      for (Future<Void> worker : workers) {
+        worker.get();
+      }
+      return deletedRows.get();
+    } catch (InterruptedException e) {
+      cancelled.set(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for deletes");
+    } catch (ExecutionException e) {
+      cancelled.set(true);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Deleting failed", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * @param columns qualifiers to delete by family, whole family is deleted when it has no qualifiers, null to delete
+   *                whole row
+   */
+  static Delete createDelete(byte[] row, Map<byte[], NavigableSet<byte[]>> columns) {
+    Delete delete = new Delete(row);
+    if (columns != null) {
+      for (Map.Entry<byte[], NavigableSet<byte[]>> family : columns.entrySet()) {
+        if (family.getValue() == null || family.getValue().isEmpty()) {
+          delete.deleteFamily(family.getKey());
+        } else {
+          for (byte[] qualifier : family.getValue()) {
+            delete.deleteColumns(family.getKey(), qualifier);
+          }
+        }
+      }
+    }
+    return delete;
+  }
+
+  /**
+   * Limits the rate of rows deletion shared by all workers
+   */
+  private static class Throttle {
+    private final long rowsPerSecond;
+    // time (in ns) when next rows can be deleted
+    private long nextFreeTime = System.nanoTime();
+
+    Throttle(long rowsPerSecond) {
+      this.rowsPerSecond = rowsPerSecond;
+    }
+
+    void acquire(int rows) throws InterruptedIOException {
+      if (rowsPerSecond <= 0) {
+        return;
+      }
+
+      long waitTime;
+      synchronized (this) {
+        long now = System.nanoTime();
+        if (nextFreeTime - now < 0) {
+          nextFreeTime = now;
+        }
+        waitTime = nextFreeTime - now;
+        nextFreeTime += TimeUnit.SECONDS.toNanos(rows) / rowsPerSecond;
+      }
+
+      if (waitTime > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(waitTime);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for deletes throughput limit");
+        }
+      }
+    }
+  }
+}
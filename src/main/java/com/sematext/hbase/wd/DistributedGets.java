@@ -0,0 +1,212 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Provides batched reading of the records by their original keys
+ */
+public final class DistributedGets {
+  /** Max number of gets sent to the cluster in one batch */
+  public static final String BATCH_SIZE = "hbase.client.get.wd.batch.size";
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  // Orders gets by their rows, so that gets to the same bucket & region go together
+  private static final Comparator<Get> ROW_COMPARATOR = new Comparator<Get>() {
+    @Override
+    public int compare(Get g1, Get g2) {
+      return Bytes.compareTo(g1.getRow(), g2.getRow());
+    }
+  };
+
+  private DistributedGets() {}
+
+  /**
+   * Reads records by their original keys in batches. Distributor must compute the same distributed key for the
+   * same original key each time (see {@link AbstractRowKeyDistributor#isKeyDeterministic()}), e.g.
+   * {@link RowKeyDistributorByHashPrefix}, {@link RowKeyDistributorByOneBytePrefix} is rejected.
+   * @param hTable table to read from
+   * @param originalKeys original keys of the records
+   * @param keyDistributor distributor records were written with
+   * @return found records keyed by their original keys, missing records are not included
+   * @throws IOException if reading failed
+   */
+  public static Map<byte[], Result> get(HTable hTable, List<byte[]> originalKeys,
+                                        AbstractRowKeyDistributor keyDistributor) throws IOException {
+    checkKeyDefined(keyDistributor);
+    List<Get> gets = new ArrayList<Get>(originalKeys.size());
+    for (byte[] originalKey : originalKeys) {
+      gets.add(new Get(keyDistributor.getDistributedKey(originalKey)));
+    }
+    return getBatched(hTable, gets, keyDistributor);
+  }
+
+  /**
+   * Same as {@link #get(HTable, List, AbstractRowKeyDistributor)}, but allows to specify what to read for each record.
+   * @param hTable table to read from
+   * @param originalGets gets with the original keys as the rows
+   * @param keyDistributor distributor records were written with
+   * @return found records keyed by their original keys, missing records are not included
+   * @throws IOException if reading failed
+   */
+  public static Map<byte[], Result> getByGets(HTable hTable, List<Get> originalGets,
+                                              AbstractRowKeyDistributor keyDistributor) throws IOException {
+    checkKeyDefined(keyDistributor);
+    List<Get> gets = new ArrayList<Get>(originalGets.size());
+    for (Get originalGet : originalGets) {
+      gets.add(copy(originalGet, keyDistributor.getDistributedKey(originalGet.getRow())));
+    }
+    return getBatched(hTable, gets, keyDistributor);
+  }
+
+  private static void checkKeyDefined(AbstractRowKeyDistributor keyDistributor) {
+    if (!keyDistributor.isKeyDeterministic()) {
+      throw new IllegalArgumentException("Distributed key should be defined by original key, "
+              + keyDistributor.getClass().getName() + " is not supported, use getAll() instead");
+    }
+  }
+
+  /**
+   * Reads all records with the given original key by trying all buckets it could have been written to, e.g. when
+   * {@link RowKeyDistributorByOneBytePrefix} is used. All candidate gets are sent as one batch.
+   * @param hTable table to read from
+   * @param originalGet get with the original key as the row
+   * @param keyDistributor distributor records were written with
+   * @return found records, in the buckets order
+   * @throws IOException if reading failed
+   */
+  public static Result[] getAll(HTable hTable, Get originalGet, AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    List<Get> gets = new ArrayList<Get>();
+    for (byte[] distributedKey : keyDistributor.getAllDistributedKeys(originalGet.getRow())) {
+      gets.add(copy(originalGet, distributedKey));
+    }
+    List<Result> results = fetch(hTable, gets);
+    return results.toArray(new Result[results.size()]);
+  }
+
+  /**
+   * Same as {@link #getAll(HTable, Get, AbstractRowKeyDistributor)}, but returns only the first found record.
+   * @return found record or null if there's no record with such original key
+   */
+  public static Result getFirst(HTable hTable, Get originalGet, AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    Result[] results = getAll(hTable, originalGet, keyDistributor);
+    return results.length > 0 ? results[0] : null;
+  }
+
+  /**
+   * Multi-key version of {@link #getAll(HTable, Get, AbstractRowKeyDistributor)}, gets for all candidate keys of all
+   * records are sent in batches.
+   * @param hTable table to read from
+   * @param originalGets gets with the original keys as the rows
+   * @param keyDistributor distributor records were written with
+   * @return found records keyed by their original keys, missing records are not included
+   * @throws IOException if reading failed
+   */
+  public static Map<byte[], List<Result>> getAll(HTable hTable, List<Get> originalGets,
+                                                 AbstractRowKeyDistributor keyDistributor) throws IOException {
+    List<Get> gets = new ArrayList<Get>();
+    for (Get originalGet : originalGets) {
+      for (byte[] distributedKey : keyDistributor.getAllDistributedKeys(originalGet.getRow())) {
+        gets.add(copy(originalGet, distributedKey));
+      }
+    }
+
+    Map<byte[], List<Result>> results = new TreeMap<byte[], List<Result>>(Bytes.BYTES_COMPARATOR);
+    for (Result result : fetch(hTable, gets)) {
+      byte[] originalKey = keyDistributor.getOriginalKey(result.getRow());
+      List<Result> found = results.get(originalKey);
+      if (found == null) {
+        found = new ArrayList<Result>(1);
+        results.put(originalKey, found);
+      }
+      found.add(result);
+    }
+
+    return results;
+  }
+
+  private static Map<byte[], Result> getBatched(HTable hTable, List<Get> gets,
+                                                AbstractRowKeyDistributor keyDistributor) throws IOException {
+    Map<byte[], Result> results = new TreeMap<byte[], Result>(Bytes.BYTES_COMPARATOR);
+    for (Result result : fetch(hTable, gets)) {
+      results.put(keyDistributor.getOriginalKey(result.getRow()), result);
+    }
+    return results;
+  }
+
+  /**
+   * Sends gets in batches.
+   * @return found records ordered by distributed keys
+   */
+  private static List<Result> fetch(HTable hTable, List<Get> gets) throws IOException {
+    Collections.sort(gets, ROW_COMPARATOR);
+    int batchSize = Math.max(1, hTable.getConfiguration().getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE));
+
+    List<Result> results = new ArrayList<Result>();
+    for (int from = 0; from < gets.size(); from += batchSize) {
+      // HTable groups gets by region servers and sends them in parallel
+      Result[] batch = hTable.get(gets.subList(from, Math.min(from + batchSize, gets.size())));
+      for (Result result : batch) {
+        if (result != null && !result.isEmpty()) {
+          results.add(result);
+        }
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * Creates a get identical to the given one, but with another row.
+   * @param get get to copy
+   * @param row row of the created get
+   * @return copy of the get
+   * @throws IOException if the get can't be copied
+   */
+  static Get copy(Get get, byte[] row) throws IOException {
+    Get copy = new Get(row, get.getRowLock());
+    TimeRange timeRange = get.getTimeRange();
+    copy.setTimeRange(timeRange.getMin(), timeRange.getMax());
+    copy.setMaxVersions(get.getMaxVersions());
+    copy.setFilter(get.getFilter());
+    for (Map.Entry<byte[], NavigableSet<byte[]>> family : get.getFamilyMap().entrySet()) {
+      if (family.getValue() == null) {
+        copy.addFamily(family.getKey());
+      } else {
+        for (byte[] qualifier : family.getValue()) {
+          copy.addColumn(family.getKey(), qualifier);
+        }
+      }
+    }
+    return copy;
+  }
+}
@@ -18,13 +18,21 @@ package com.sematext.hbase.wd;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PageFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
@@ -33,154 +41,547 @@ import org.apache.hadoop.hbase.util.Bytes;
  * @author Alex Baranau
  */
 public class DistributedScanner implements ResultScanner {
+  /**
+   * When set to true scanners created with {@link #create(HTable, Scan, AbstractRowKeyDistributor)} drain each
+   * bucket's scanner in a separate background thread, so that buckets are advanced in parallel
+   */
+  public static final String PREFETCH = "hbase.client.scan.wd.prefetch";
+  /** Max number of results prefetched per bucket (also by unordered scanners), defaults to scan caching */
+  public static final String PREFETCH_QUEUE_SIZE = "hbase.client.scan.wd.prefetch.queue.size";
+  /** Number of rows fetched at once from each bucket's scanner, defaults to scan caching */
+  public static final String REFILL_SIZE = "hbase.client.scan.wd.refill.size";
+  /**
+   * Max number of rows cached by all buckets' scanners together: scan caching (and so refill and prefetch queue sizes)
+   * of each bucket is set to its share of it, so that client memory use doesn't grow with the number of buckets
+   */
+  public static final String MAX_BUFFERED_ROWS = "hbase.client.scan.wd.max.buffered.rows";
+  /**
+   * Max size in bytes of the rows held by the client for all buckets together: scan caching (and so refill and prefetch
+   * queue sizes) of each bucket is set to fit its share of it, based on the size of a row fetched beforehand with a
+   * one-row scan. Ordered scanner also reduces number of rows fetched at once from the bucket's scanner based on the
+   * actual size of its rows, so that buckets with larger rows don't hold more than their share.
+   */
+  public static final String MAX_BUFFERED_BYTES = "hbase.client.scan.wd.max.buffered.bytes";
+  /**
+   * When set to true unordered scanners use one scanner per region instead of one per bucket, see
+   * {@link RegionScanPlanner}. {@link MultiRangeFilter} must be on the region servers classpath.
+   */
+  public static final String COALESCE_BY_REGION = "hbase.client.scan.wd.coalesce.by.region";
+  /**
+   * Max number of consecutive attempts to reopen failed bucket's scanner right after its last returned row, see
+   * {@link ResumableResultScanner}. 0 (default) disables reopening.
+   */
+  public static final String RETRIES = "hbase.client.scan.wd.retries";
+  public static final int DEFAULT_RETRIES = 0;
+  /** Time (in ms) to wait before reopening failed bucket's scanner, defaults to hbase.client.pause */
+  public static final String RETRY_PAUSE = "hbase.client.scan.wd.retry.pause";
+
+  // Orders buckets by the original key of their next rows, bucket index is used to make the order stable
+  private static final Comparator<BucketCursor> HEAD_COMPARATOR = new Comparator<BucketCursor>() {
+    @Override
+    public int compare(BucketCursor c1, BucketCursor c2) {
+      int result = Bytes.compareTo(c1.headKey, c1.headKeyOffset, c1.headKey.length - c1.headKeyOffset,
+                                   c2.headKey, c2.headKeyOffset, c2.headKey.length - c2.headKeyOffset);
+      return result != 0 ? result : c1.index - c2.index;
+    }
+  };
+
   private final AbstractRowKeyDistributor keyDistributor;
   private final ResultScanner[] scanners;
-  private final List<Result>[] nextOfScanners;
-  private Result next = null;
+  // Buckets which have next row to return, with the bucket holding the smallest original key on top
+  private final PriorityQueue<BucketCursor> heads;
+  private boolean headsInitialized = false;
+  // Bucket holding the smallest original key, kept out of the heads queue while it stays the smallest one
+  private BucketCursor current = null;
+  private final int refillSize;
+  private final long maxBufferedBytes;
+  // size of the rows in buckets' buffers, tracked only when maxBufferedBytes is set
+  private long bufferedBytes = 0;
+  // executor running prefetching workers, owned by this scanner
+  private final ExecutorService prefetchExecutor;
+  // position of the scan in each bucket, see getCursor()
+  private final byte[][] lastRows;
+  private final boolean[] exhausted;
+  // max number of rows to return, 0 means no limit
+  private final int limit;
+  private int returned = 0;
+  private boolean scannersClosed = false;
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Creates scanner which fetches one row at a time from each of the given scanners, as their caching is not known.
+   * Null scanners are treated as exhausted ones.
+   */
   public DistributedScanner(AbstractRowKeyDistributor keyDistributor, ResultScanner[] scanners) throws IOException {
-    this.keyDistributor = keyDistributor;
-    this.scanners = scanners;
-    this.nextOfScanners = new List[scanners.length];
-    for (int i = 0; i < this.nextOfScanners.length; i++) {
-      this.nextOfScanners[i] = new ArrayList<Result>();
-    }
+    this(keyDistributor, scanners, 1);
   }
 
-  private boolean hasNext(int nbRows) throws IOException {
-    if (next != null) {
-      return true;
-    }
+  /**
+   * @param refillSize number of rows to fetch at once from each of the scanners, usually equal to their caching
+   */
+  public DistributedScanner(AbstractRowKeyDistributor keyDistributor, ResultScanner[] scanners, int refillSize) {
+    this(keyDistributor, scanners, refillSize, 0);
+  }
 
-    next = nextInternal(nbRows);
+  /**
+   * @param refillSize max number of rows to fetch at once from each of the scanners
+   * @param maxBufferedBytes max size of the rows held in buckets' buffers, 0 means no limit
+   */
+  public DistributedScanner(AbstractRowKeyDistributor keyDistributor, ResultScanner[] scanners, int refillSize,
+                            long maxBufferedBytes) {
+    this(keyDistributor, scanners, refillSize, maxBufferedBytes, 0);
+  }
 
-    return next != null;
+  /**
+   * @param refillSize max number of rows to fetch at once from each of the scanners
+   * @param maxBufferedBytes max size of the rows held in buckets' buffers, 0 means no limit
+   * @param limit max number of rows to return, scanners are closed as soon as it is reached, 0 means no limit
+   */
+  public DistributedScanner(AbstractRowKeyDistributor keyDistributor, ResultScanner[] scanners, int refillSize,
+                            long maxBufferedBytes, int limit) {
+    this(keyDistributor, scanners, refillSize, maxBufferedBytes, limit, null);
   }
 
-  @Override
-  public Result next() throws IOException {
-    if (hasNext(1)) {
-      Result toReturn = next;
-      next = null;
-      return toReturn;
+  private DistributedScanner(AbstractRowKeyDistributor keyDistributor, ResultScanner[] scanners, int refillSize,
+                             long maxBufferedBytes, int limit, ExecutorService prefetchExecutor) {
+    this.keyDistributor = keyDistributor;
+    this.scanners = scanners;
+    this.refillSize = Math.max(1, refillSize);
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.limit = limit;
+    this.prefetchExecutor = prefetchExecutor;
+    this.heads = new PriorityQueue<BucketCursor>(Math.max(1, scanners.length), HEAD_COMPARATOR);
+    this.lastRows = new byte[scanners.length][];
+    this.exhausted = new boolean[scanners.length];
+    for (int i = 0; i < scanners.length; i++) {
+      exhausted[i] = scanners[i] == null;
     }
+  }
 
-    return null;
+  @Override
+  public Result next() throws IOException {
+    return nextInternal();
   }
 
   @Override
   public Result[] next(int nbRows) throws IOException {
-    // Identical to HTable.ClientScanner implementation
-    // Collect values to be returned here
     ArrayList<Result> resultSets = new ArrayList<Result>(nbRows);
-    for(int i = 0; i < nbRows; i++) {
-      Result next = next();
-      if (next != null) {
-        resultSets.add(next);
-      } else {
+    while (resultSets.size() < nbRows) {
+      Result next = nextInternal();
+      if (next == null) {
         break;
       }
+      resultSets.add(next);
     }
     return resultSets.toArray(new Result[resultSets.size()]);
   }
 
+  /**
+   * @return current position of the scan, which can be used to continue it later with
+   * {@link #create(HTable, Scan, AbstractRowKeyDistributor, ScanCursor, int)}
+   */
+  public ScanCursor getCursor() {
+    return new ScanCursor(lastRows.clone(), exhausted.clone());
+  }
+
+  /**
+   * Sets position the scan is continued from, so that buckets which return no rows keep it in {@link #getCursor()}.
+   * Must be called before fetching rows.
+   */
+  void setStartCursor(ScanCursor cursor) {
+    for (int i = 0; i < lastRows.length; i++) {
+      lastRows[i] = cursor.getLastRow(i);
+    }
+  }
+
   @Override
   public void close() {
+    closeScanners();
+  }
+
+  private void closeScanners() {
+    if (scannersClosed) {
+      return;
+    }
+    scannersClosed = true;
     for (int i = 0; i < scanners.length; i++) {
-      scanners[i].close();
+      if (scanners[i] != null) {
+        scanners[i].close();
+      }
+    }
+    if (prefetchExecutor != null) {
+      // all workers are finished at this point as prefetching scanners were closed
+      prefetchExecutor.shutdown();
     }
   }
 
   public static DistributedScanner create(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor) throws IOException {
+    return create(hTable, originalScan, keyDistributor, null, 0);
+  }
+
+  /**
+   * Creates scanner which returns at most limit rows, see
+   * {@link #create(HTable, Scan, AbstractRowKeyDistributor, ScanCursor, int)}.
+   */
+  public static DistributedScanner create(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                                          int limit) throws IOException {
+    return create(hTable, originalScan, keyDistributor, null, limit);
+  }
+
+  /**
+   * Creates scanner which continues the scan from the given cursor, see
+   * {@link #create(HTable, Scan, AbstractRowKeyDistributor, ScanCursor, int)}. To fetch pages pass the page size as the
+   * limit instead, so that buckets don't fetch rows past the page.
+   */
+  public static DistributedScanner create(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                                          ScanCursor cursor) throws IOException {
+    return create(hTable, originalScan, keyDistributor, cursor, 0);
+  }
+
+  /**
+   * Creates scanner which continues the scan from the given cursor: each bucket is scanned from the row following the
+   * last row returned from it, exhausted buckets are not scanned. When limit is set no bucket returns more rows than
+   * that ({@link PageFilter} is added to each bucket's scan), each bucket's caching is capped with its share of the
+   * limit (buckets which keep supplying rows fetch more at once) and all buckets' scanners are closed as soon as limit
+   * is reached.
+   * @param originalScan the same scan the cursor's scanner was created with
+   * @param cursor position to continue from, see {@link #getCursor()}, null to start from the beginning
+   * @param limit max number of rows to return, 0 means no limit
+   */
+  public static DistributedScanner create(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor,
+                                          ScanCursor cursor, int limit) throws IOException {
+    Configuration conf = hTable.getConfiguration();
     Scan[] scans = keyDistributor.getDistributedScans(originalScan);
+    if (cursor != null) {
+      scans = cursor.resume(scans);
+    }
+    if (limit > 0) {
+      setLimit(scans, limit);
+    }
+    int caching = setBucketCaching(hTable, originalScan, scans, limit, conf.getBoolean(PREFETCH, false));
+    ResultScanner[] rss = openScanners(hTable, scans);
 
-    ResultScanner[] rss = new ResultScanner[scans.length];
-    for (int i = 0; i < scans.length; i++) {
-      rss[i] = hTable.getScanner(scans[i]);
+    ExecutorService prefetchExecutor = null;
+    boolean created = false;
+    try {
+      if (conf.getBoolean(PREFETCH, false)) {
+        prefetchExecutor = Executors.newFixedThreadPool(scans.length, new DaemonThreadFactory("wd-scan-prefetch"));
+        int queueSize = conf.getInt(PREFETCH_QUEUE_SIZE, caching);
+        for (int i = 0; i < rss.length; i++) {
+          if (rss[i] != null) {
+            rss[i] = new PrefetchingResultScanner(rss[i], queueSize, prefetchExecutor);
+          }
+        }
+      }
+
+      int refillSize = conf.getInt(REFILL_SIZE, caching);
+      long maxBufferedBytes = conf.getLong(MAX_BUFFERED_BYTES, 0);
+      DistributedScanner scanner = new DistributedScanner(keyDistributor, rss, refillSize, maxBufferedBytes, limit,
+              prefetchExecutor);
+      if (cursor != null) {
+        scanner.setStartCursor(cursor);
+      }
+      created = true;
+      return scanner;
+    } finally {
+      if (!created) {
+        // prefetching scanners stop their workers when closed
+        for (ResultScanner rs : rss) {
+          if (rs != null) {
+            rs.close();
+          }
+        }
+        if (prefetchExecutor != null) {
+          prefetchExecutor.shutdownNow();
+        }
+      }
     }
+  }
 
-    return new DistributedScanner(keyDistributor, rss);
+  /**
+   * Creates scanner which returns rows as soon as any of the buckets has them, i.e. not ordered by the original keys.
+   * Buckets are always drained in parallel, see {@link UnorderedDistributedScanner}. {@link #PREFETCH_QUEUE_SIZE}
+   * defines the number of results fetched ahead per bucket. With {@link #COALESCE_BY_REGION} set buckets' intervals
+   * falling into the same region are served by one scanner.
+   */
+  public static ResultScanner createUnordered(HTable hTable, Scan originalScan, AbstractRowKeyDistributor keyDistributor) throws IOException {
+    Scan[] scans = hTable.getConfiguration().getBoolean(COALESCE_BY_REGION, false) ?
+            RegionScanPlanner.getScans(hTable, originalScan, keyDistributor) :
+            keyDistributor.getDistributedScans(originalScan);
+    int caching = setBucketCaching(hTable, originalScan, scans, 0, true);
+    ResultScanner[] rss = openScanners(hTable, scans);
+    int queueSize = hTable.getConfiguration().getInt(PREFETCH_QUEUE_SIZE, caching);
+    return new UnorderedDistributedScanner(rss, queueSize * rss.length);
   }
 
-  private Result nextInternal(int nbRows) throws IOException {
-    Result result = null;
-    int indexOfScannerToUse = -1;
-    for (int i = 0; i < nextOfScanners.length; i++) {
-      if (nextOfScanners[i] == null) {
-        // result scanner is exhausted, don't advance it any more
+  /**
+   * Sets caching of the buckets' scans: the original scan caching, or the bucket's share of {@link #MAX_BUFFERED_ROWS}
+   * when it is set, but not more than fits into the bucket's share of {@link #MAX_BUFFERED_BYTES} and not more than the
+   * bucket's share of the limit when they are set
+   * @param prefetched whether buckets' rows are also held in prefetch queues (of the caching size)
+   * @return caching of each bucket's scan
+   */
+  static int setBucketCaching(HTable hTable, Scan originalScan, Scan[] scans, int limit, boolean prefetched)
+          throws IOException {
+    Configuration conf = hTable.getConfiguration();
+    int maxBufferedRows = conf.getInt(MAX_BUFFERED_ROWS, 0);
+    int caching;
+    if (maxBufferedRows > 0) {
+      caching = Math.max(1, maxBufferedRows / Math.max(1, scans.length));
+    } else {
+      caching = originalScan.getCaching() > 0 ? originalScan.getCaching() : hTable.getScannerCaching();
+    }
+    long maxBufferedBytes = conf.getLong(MAX_BUFFERED_BYTES, 0);
+    if (maxBufferedBytes > 0) {
+      long rowSize = estimateRowSize(hTable, scans);
+      if (rowSize > 0) {
+        // prefetched rows are held both in scanner's cache and in the queue
+        long bucketBytes = maxBufferedBytes / Math.max(1, scans.length) / (prefetched ? 2 : 1);
+        caching = (int) Math.max(1, Math.min(caching, bucketBytes / rowSize));
+      }
+    }
+    if (limit > 0) {
+      caching = Math.min(caching, getLimitShare(scans, limit));
+    }
+    for (Scan scan : scans) {
+      if (scan != null) {
+        scan.setCaching(caching);
+      }
+    }
+    return caching;
+  }
+
+  /**
+   * @return number of rows each of the (non-null) scans should fetch at once for all of them to fetch the limit
+   */
+  static int getLimitShare(Scan[] scans, int limit) {
+    int count = 0;
+    for (Scan scan : scans) {
+      if (scan != null) {
+        count++;
+      }
+    }
+    return Math.max(1, (limit + count - 1) / Math.max(1, count));
+  }
+
+  /**
+   * @return size of the first row of the first non-empty bucket scanned, 0 if there are no rows
+   */
+  private static long estimateRowSize(HTable hTable, Scan[] scans) throws IOException {
+    for (Scan scan : scans) {
+      if (scan == null) {
         continue;
       }
+      Scan probe = new Scan(scan);
+      probe.setCaching(1);
+      ResultScanner rs = hTable.getScanner(probe);
+      try {
+        Result result = rs.next();
+        if (result != null) {
+          return getSize(result);
+        }
+      } finally {
+        rs.close();
+      }
+    }
+    return 0;
+  }
 
-      if (nextOfScanners[i].size() == 0) {
-        // advancing result scanner
-        Result[] results = scanners[i].next(nbRows);
-        if (results.length == 0) {
-          // marking result scanner as exhausted
-          nextOfScanners[i] = null;
+  /**
+   * Makes region servers return at most limit rows (per region) for each of the scans, after the scan's own filter
+   */
+  private static void setLimit(Scan[] scans, int limit) {
+    for (Scan scan : scans) {
+      if (scan == null) {
+        continue;
+      }
+      Filter filter = scan.getFilter();
+      scan.setFilter(filter == null ? new PageFilter(limit) :
+              new FilterList(FilterList.Operator.MUST_PASS_ALL, Arrays.asList(filter, new PageFilter(limit))));
+    }
+  }
+
+  /**
+   * Opens scanners of the buckets, failed scanners are reopened after their last returned row as configured with
+   * {@link #RETRIES}. No scanner is opened for null scan.
+   */
+  static ResultScanner[] openScanners(HTable hTable, Scan[] scans) throws IOException {
+    Configuration conf = hTable.getConfiguration();
+    int retries = conf.getInt(RETRIES, DEFAULT_RETRIES);
+    long pause = conf.getLong(RETRY_PAUSE, conf.getLong("hbase.client.pause", 1000));
+    ResultScanner[] rss = new ResultScanner[scans.length];
+    try {
+      for (int i = 0; i < scans.length; i++) {
+        if (scans[i] == null) {
           continue;
         }
-        nextOfScanners[i].addAll(Arrays.asList(results));
+        rss[i] = hTable.getScanner(scans[i]);
+        // scans returning rows in parts can't be resumed after the last row
+        if (retries > 0 && scans[i].getBatch() <= 0) {
+          rss[i] = new ResumableResultScanner(hTable, scans[i], rss[i], retries, pause);
+        }
+      }
+    } catch (IOException e) {
+      for (ResultScanner rs : rss) {
+        if (rs != null) {
+          rs.close();
+        }
+      }
+      throw e;
+    }
+    return rss;
+  }
+
+  private Result nextInternal() throws IOException {
+    if (limit > 0 && returned >= limit) {
+      return null;
+    }
+    if (!headsInitialized) {
+      for (int i = 0; i < scanners.length; i++) {
+        if (exhausted[i]) {
+          continue;
+        }
+        BucketCursor cursor = new BucketCursor(i, scanners[i]);
+        if (cursor.advance()) {
+          heads.add(cursor);
+        } else {
+          exhausted[i] = true;
+        }
       }
+      headsInitialized = true;
+    }
 
-      // if result is null or next record has original key less than the candidate to be returned
-      if (result == null || Bytes.compareTo(keyDistributor.getOriginalKey(nextOfScanners[i].get(0).getRow()),
-                                            keyDistributor.getOriginalKey(result.getRow())) < 0) {
-        result = nextOfScanners[i].get(0);
-        indexOfScannerToUse = i;
+    if (current == null) {
+      current = heads.poll();
+      if (current == null) {
+        // all result scanners are exhausted
+        return null;
       }
     }
 
-    if (indexOfScannerToUse >= 0) {
-      nextOfScanners[indexOfScannerToUse].remove(0);
+    Result result = current.head;
+    lastRows[current.index] = current.headRow;
+    current.returnedRows++;
+    if (limit > 0 && ++returned == limit) {
+      // no more rows are needed, releasing scanners right away
+      current = null;
+      heads.clear();
+      closeScanners();
+      return result;
+    }
+    if (!current.advance()) {
+      exhausted[current.index] = true;
+      current = null;
+    } else if (!heads.isEmpty() && HEAD_COMPARATOR.compare(current, heads.peek()) > 0) {
+      heads.add(current);
+      current = null;
     }
 
     return result;
   }
 
-  @Override
-  public Iterator<Result> iterator() {
-    // Identical to HTable.ClientScanner implementation
-    return new Iterator<Result>() {
-      // The next RowResult, possibly pre-read
-      Result next = null;
-
-      // return true if there is another item pending, false if there isn't.
-      // this method is where the actual advancing takes place, but you need
-      // to call next() to consume it. hasNext() will only advance if there
-      // isn't a pending next().
-      public boolean hasNext() {
-        if (next == null) {
-          try {
-            next = DistributedScanner.this.next();
-            return next != null;
-          } catch (IOException e) {
-            throw new RuntimeException(e);
+  /**
+   * Holds rows fetched from the bucket's scanner, with the original key of the next row located once
+   */
+  private final class BucketCursor {
+    private final int index;
+    private final ResultScanner scanner;
+    private Result[] buffer = new Result[0];
+    private int pos = 0;
+    // size of the rows fetched with the last refill and average size of a row, tracked when buffered bytes are limited
+    private long bufferBytes = 0;
+    private long rowBytes = 0;
+    // number of rows returned from this bucket
+    private int returnedRows = 0;
+    private Result head;
+    private byte[] headRow;
+    // original key of the next row is held in headKey from headKeyOffset till the end
+    private byte[] headKey;
+    private int headKeyOffset;
+
+    private BucketCursor(int index, ResultScanner scanner) {
+      this.index = index;
+      this.scanner = scanner;
+    }
+
+    /** @return false if result scanner is exhausted */
+    private boolean advance() throws IOException {
+      if (pos == buffer.length) {
+        // advancing result scanner
+        buffer = scanner.next(getRefillSize());
+        pos = 0;
+        if (maxBufferedBytes > 0) {
+          bufferedBytes -= bufferBytes;
+          bufferBytes = 0;
+          for (Result result : buffer) {
+            bufferBytes += getSize(result);
+          }
+          bufferedBytes += bufferBytes;
+          if (buffer.length > 0) {
+            rowBytes = Math.max(1, bufferBytes / buffer.length);
           }
         }
-        return true;
+        if (buffer.length == 0) {
+          head = null;
+          headRow = null;
+          headKey = null;
+          return false;
+        }
       }
 
-      // get the pending next item and advance the iterator. returns null if
-      // there is no next item.
-      public Result next() {
-        // since hasNext() does the real advancing, we call this to determine
-        // if there is a next before proceeding.
-        if (!hasNext()) {
-          return null;
-        }
+      head = buffer[pos];
+      // not holding reference to the row which will be returned
+      buffer[pos++] = null;
+      headRow = head.getRow();
+      if (keyDistributor.hasSuffixOriginalKey()) {
+        headKey = headRow;
+        headKeyOffset = keyDistributor.getPrefixLength(headRow);
+      } else {
+        headKey = keyDistributor.getOriginalKey(headRow);
+        headKeyOffset = 0;
+      }
+      return true;
+    }
 
-        // if we get to here, then hasNext() has given us an item to return.
-        // we want to return the item and then null out the next pointer, so
-        // we use a temporary variable.
-        Result temp = next;
-        next = null;
-        return temp;
+    private int getRefillSize() {
+      if (limit <= 0) {
+        return getBufferBoundRefillSize(refillSize);
       }
+      // buckets start with their share of the limit, then rows left to the limit are expected from the buckets in
+      // proportion to the rows they returned so far: bucket which keeps supplying rows fetches more at once
+      int left = limit - returned;
+      long expected = returned == 0 ? refillSize : ((long) left * returnedRows + returned - 1) / returned;
+      // bucket can't give more rows than left to the limit
+      return getBufferBoundRefillSize((int) Math.max(1, Math.min(expected, left)));
+    }
 
-      public void remove() {
-        throw new UnsupportedOperationException();
+    private int getBufferBoundRefillSize(int maxRefillSize) {
+      if (maxBufferedBytes <= 0) {
+        return maxRefillSize;
       }
-    };
+      if (rowBytes == 0) {
+        // size of the rows is not known yet
+        return 1;
+      }
+
+      // bucket's buffer is fully consumed at this point
+      long available = Math.min(maxBufferedBytes / scanners.length, maxBufferedBytes - (bufferedBytes - bufferBytes));
+      return (int) Math.max(1, Math.min(maxRefillSize, available / rowBytes));
+    }
+  }
+
+  private static long getSize(Result result) {
+    KeyValue[] kvs = result.raw();
+    long size = 0;
+    if (kvs != null) {
+      for (KeyValue kv : kvs) {
+        size += kv.getLength();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public Iterator<Result> iterator() {
+    return new ResultScannerIterator(this);
   }
 }
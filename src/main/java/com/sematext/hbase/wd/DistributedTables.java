@@ -0,0 +1,141 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Utility methods for creating tables pre-split on the buckets boundaries, so that writes are spread over all region
+ * servers from the start.
+ */
+public final class DistributedTables {
+  private static final int MAX_SUB_BUCKET_SPLITS = 256;
+
+  private DistributedTables() {}
+
+  /**
+   * Creates table pre-split into the given number of regions, see {@link #getSplitKeys(AbstractRowKeyDistributor, int)}.
+   * @param admin admin to create table with
+   * @param desc table descriptor
+   * @param keyDistributor distributor which will be used to write the data
+   * @param regionsCount number of regions to create
+   * @throws IOException when table can't be created
+   */
+  public static void createTable(HBaseAdmin admin, HTableDescriptor desc, AbstractRowKeyDistributor keyDistributor,
+                                 int regionsCount) throws IOException {
+    createTable(admin, desc, getSplitKeys(keyDistributor, regionsCount));
+  }
+
+  /**
+   * Creates table pre-split on each bucket boundary and on the given original keys within each bucket, see
+   * {@link #getSplitKeys(AbstractRowKeyDistributor, byte[][])}.
+   * @param admin admin to create table with
+   * @param desc table descriptor
+   * @param keyDistributor distributor which will be used to write the data
+   * @param originalKeySplits original keys to split each bucket on
+   * @throws IOException when table can't be created
+   */
+  public static void createTable(HBaseAdmin admin, HTableDescriptor desc, AbstractRowKeyDistributor keyDistributor,
+                                 byte[][] originalKeySplits) throws IOException {
+    createTable(admin, desc, getSplitKeys(keyDistributor, originalKeySplits));
+  }
+
+  private static void createTable(HBaseAdmin admin, HTableDescriptor desc, byte[][] splitKeys) throws IOException {
+    if (splitKeys.length == 0) {
+      admin.createTable(desc);
+    } else {
+      admin.createTable(desc, splitKeys);
+    }
+  }
+
+  /**
+   * Gets keys to split table on into the given number of regions. When there are fewer regions than buckets each
+   * region holds several adjacent buckets, otherwise each bucket is split further on the first byte of the original
+   * key (which works well when it is evenly distributed, otherwise see
+   * {@link #getSplitKeys(AbstractRowKeyDistributor, byte[][])}).
+   * @param keyDistributor distributor which will be used to write the data
+   * @param regionsCount number of regions
+   * @return sorted split keys, regionsCount - 1 of them
+   */
+  public static byte[][] getSplitKeys(AbstractRowKeyDistributor keyDistributor, int regionsCount) {
+    byte[][] prefixes = getSortedPrefixes(keyDistributor);
+    int bucketsCount = prefixes.length;
+    if (regionsCount < 1 || regionsCount > bucketsCount * MAX_SUB_BUCKET_SPLITS) {
+      throw new IllegalArgumentException("Regions count should be in 1.." + bucketsCount * MAX_SUB_BUCKET_SPLITS +
+              " range for " + bucketsCount + " buckets");
+    }
+
+    Set<byte[]> splitKeys = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    if (regionsCount <= bucketsCount) {
+      for (int i = 1; i < regionsCount; i++) {
+        splitKeys.add(prefixes[(int) ((long) i * bucketsCount / regionsCount)]);
+      }
+    } else {
+      for (int i = 0; i < bucketsCount; i++) {
+        int parts = regionsCount / bucketsCount + (i < regionsCount % bucketsCount ? 1 : 0);
+        if (i > 0) {
+          splitKeys.add(prefixes[i]);
+        }
+        for (int k = 1; k < parts; k++) {
+          splitKeys.add(Bytes.add(prefixes[i], new byte[] {(byte) (k * MAX_SUB_BUCKET_SPLITS / parts)}));
+        }
+      }
+    }
+
+    return toArray(splitKeys);
+  }
+
+  /**
+   * Gets keys to split table on each bucket boundary and on the given original keys within each bucket. Use it when
+   * distribution of the original keys is known, e.g. when they start with the id of the source.
+   * @param keyDistributor distributor which will be used to write the data
+   * @param originalKeySplits original keys to split each bucket on
+   * @return sorted split keys
+   */
+  public static byte[][] getSplitKeys(AbstractRowKeyDistributor keyDistributor, byte[][] originalKeySplits) {
+    byte[][] prefixes = getSortedPrefixes(keyDistributor);
+    Set<byte[]> splitKeys = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < prefixes.length; i++) {
+      if (i > 0) {
+        splitKeys.add(prefixes[i]);
+      }
+      for (byte[] originalKeySplit : originalKeySplits) {
+        splitKeys.add(Bytes.add(prefixes[i], originalKeySplit));
+      }
+    }
+
+    return toArray(splitKeys);
+  }
+
+  private static byte[][] getSortedPrefixes(AbstractRowKeyDistributor keyDistributor) {
+    byte[][] prefixes = keyDistributor.getAllDistributedKeys(new byte[0]);
+    Arrays.sort(prefixes, Bytes.BYTES_COMPARATOR);
+    return prefixes;
+  }
+
+  private static byte[][] toArray(Set<byte[]> splitKeys) {
+    // empty key can't be used to split on, it is the start of the first region
+    splitKeys.remove(new byte[0]);
+    return splitKeys.toArray(new byte[splitKeys.size()][]);
+  }
+}
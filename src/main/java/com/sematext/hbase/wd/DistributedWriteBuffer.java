@@ -0,0 +1,341 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+/**
+ * Client-side write buffer which accepts puts by the original keys, groups them by buckets and flushes groups in
+ * parallel in the background. Flushing is triggered when buffered data reaches {@link #FLUSH_SIZE} and every
+ * {@link #FLUSH_INTERVAL} ms. Writers are blocked when data which is buffered or being flushed reaches
+ * {@link #MAX_BUFFERED_SIZE}.
+ * Settings are read from the configuration of the table passed to the constructor. Each flushing thread writes with
+ * its own HTable instance (HTable is not thread-safe), while this buffer can be used by several writers.
+ * Puts which failed to be written are kept, see {@link #getFailedPuts()} and {@link #retryFailedPuts()}.
+ */
+public class DistributedWriteBuffer implements Closeable {
+  /** Size (in bytes) of the buffered puts which triggers flush */
+  public static final String FLUSH_SIZE = "hbase.client.write.wd.flush.size";
+  public static final long DEFAULT_FLUSH_SIZE = 2 * 1024 * 1024;
+  /** Interval (in ms) to flush buffered puts with, 0 to flush only by size */
+  public static final String FLUSH_INTERVAL = "hbase.client.write.wd.flush.interval";
+  public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+  /** Max size (in bytes) of the puts which are buffered or being flushed, defaults to 4 flush sizes */
+  public static final String MAX_BUFFERED_SIZE = "hbase.client.write.wd.max.buffered.size";
+  /** Number of threads which flush groups of puts */
+  public static final String FLUSH_THREADS = "hbase.client.write.wd.flush.threads";
+  public static final int DEFAULT_FLUSH_THREADS = 10;
+
+  private final Configuration conf;
+  private final byte[] tableName;
+  private final AbstractRowKeyDistributor keyDistributor;
+  private final long flushSize;
+  private final long maxBufferedSize;
+  private final ExecutorService flushExecutor;
+  private final ScheduledExecutorService flushTimer;
+  // HTable instances used by flushing threads
+  private final ThreadLocal<HTable> tables = new ThreadLocal<HTable>();
+  private final List<HTable> createdTables = Collections.synchronizedList(new ArrayList<HTable>());
+
+  // Puts which weren't submitted for flushing yet, grouped by buckets prefixes
+  private Map<ImmutableBytesWritable, PutsGroup> buffer = new HashMap<ImmutableBytesWritable, PutsGroup>();
+  private long bufferSize = 0;
+  // Size of the buffered puts and puts which are being flushed
+  private long pendingSize = 0;
+  private int flushesInProgress = 0;
+  private IOException failure = null;
+  // Puts (with distributed keys) of the failed flushes which weren't written
+  private List<Put> failedPuts = new ArrayList<Put>();
+  private boolean closed = false;
+
+  public DistributedWriteBuffer(HTable hTable, AbstractRowKeyDistributor keyDistributor) {
+    this.conf = hTable.getConfiguration();
+    this.tableName = hTable.getTableName();
+    this.keyDistributor = keyDistributor;
+    this.flushSize = conf.getLong(FLUSH_SIZE, DEFAULT_FLUSH_SIZE);
+    this.maxBufferedSize = conf.getLong(MAX_BUFFERED_SIZE, 4 * flushSize);
+    this.flushExecutor = Executors.newFixedThreadPool(conf.getInt(FLUSH_THREADS, DEFAULT_FLUSH_THREADS),
+            new DaemonThreadFactory("wd-write-flush"));
+
+    long flushInterval = conf.getLong(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL);
+    if (flushInterval > 0) {
+      this.flushTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("wd-write-flush-timer"));
+      this.flushTimer.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (DistributedWriteBuffer.this) {
+            if (!closed && bufferSize > 0) {
+              flushBuffer();
+            }
+          }
+        }
+      }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    } else {
+      this.flushTimer = null;
+    }
+  }
+
+  /**
+   * Adds put to the buffer, blocks while buffer is full.
+   * @param originalPut put with the original key as the row
+   * @throws IOException if one of the previous flushes failed
+   */
+  public synchronized void put(Put originalPut) throws IOException {
+    if (closed) {
+      throw new IOException("Write buffer is closed");
+    }
+    checkFailure();
+
+    byte[] row = keyDistributor.getDistributedKey(originalPut.getRow());
+    Put put = toDistributedPut(originalPut, row);
+    long size = put.heapSize();
+
+    // waiting for the flushes in progress to free the memory, unless nothing is buffered (too big put)
+    while (pendingSize > 0 && pendingSize + size > maxBufferedSize) {
+      if (bufferSize > 0) {
+        flushBuffer();
+      } else {
+        waitForFlushes();
+        checkFailure();
+      }
+    }
+
+    add(put, size);
+    if (bufferSize >= flushSize) {
+      flushBuffer();
+    }
+  }
+
+  // Should be called while holding the lock
+  private void add(Put put, long size) {
+    byte[] row = put.getRow();
+    // without known prefix all puts go to one group
+    int prefixLength = keyDistributor.hasSuffixOriginalKey() ? keyDistributor.getPrefixLength(row) : 0;
+    ImmutableBytesWritable bucket = new ImmutableBytesWritable(row, 0, prefixLength);
+    PutsGroup group = buffer.get(bucket);
+    if (group == null) {
+      group = new PutsGroup();
+      buffer.put(bucket, group);
+    }
+    group.puts.add(put);
+    group.size += size;
+    bufferSize += size;
+    pendingSize += size;
+  }
+
+  /**
+   * Flushes all buffered puts and waits till they are written.
+   * @throws IOException if flushing failed
+   */
+  public synchronized void flush() throws IOException {
+    flushBuffer();
+    while (flushesInProgress > 0) {
+      waitForFlushes();
+    }
+    checkFailure();
+  }
+
+  /**
+   * Flushes buffered puts and releases resources.
+   * @throws IOException if flushing failed, puts which weren't written can be taken with {@link #getFailedPuts()}
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    if (flushTimer != null) {
+      flushTimer.shutdown();
+    }
+
+    try {
+      flush();
+    } finally {
+      flushExecutor.shutdown();
+      try {
+        flushExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      for (HTable table : createdTables) {
+        table.close();
+      }
+    }
+  }
+
+  /**
+   * @return puts (with distributed keys) which weren't written because their flushes failed
+   */
+  public synchronized List<Put> getFailedPuts() {
+    return new ArrayList<Put>(failedPuts);
+  }
+
+  /**
+   * Clears the failure and submits failed puts for flushing again, see {@link #flush()}.
+   * @throws IOException if buffer is closed
+   */
+  public synchronized void retryFailedPuts() throws IOException {
+    if (closed) {
+      throw new IOException("Write buffer is closed");
+    }
+    List<Put> puts = failedPuts;
+    failedPuts = new ArrayList<Put>();
+    failure = null;
+    for (Put put : puts) {
+      add(put, put.heapSize());
+    }
+    flushBuffer();
+  }
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Flushing puts failed, " + failedPuts.size() + " puts were not written", failure);
+    }
+  }
+
+  private void waitForFlushes() throws IOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for puts to be flushed");
+    }
+  }
+
+  // Should be called while holding the lock
+  private void flushBuffer() {
+    for (PutsGroup group : buffer.values()) {
+      flushesInProgress++;
+      flushExecutor.execute(new FlushTask(group));
+    }
+    buffer = new HashMap<ImmutableBytesWritable, PutsGroup>();
+    bufferSize = 0;
+  }
+
+  private synchronized void flushed(PutsGroup group, IOException e, List<Put> unwritten) {
+    if (e != null && failure == null) {
+      failure = e;
+    }
+    failedPuts.addAll(unwritten);
+    pendingSize -= group.size;
+    flushesInProgress--;
+    notifyAll();
+  }
+
+  private HTable getTable() throws IOException {
+    HTable table = tables.get();
+    if (table == null) {
+      table = new HTable(conf, tableName);
+      table.setAutoFlush(false);
+      tables.set(table);
+      createdTables.add(table);
+    }
+    return table;
+  }
+
+  /**
+   * Creates put identical to the given one, but with another row.
+   * @param put put to copy
+   * @param row row of the created put
+   * @return copy of the put
+   * @throws IOException if put can't be copied
+   */
+  static Put toDistributedPut(Put put, byte[] row) throws IOException {
+    Put distributedPut = new Put(row, put.getTimeStamp(), put.getRowLock());
+    distributedPut.setWriteToWAL(put.getWriteToWAL());
+    for (List<KeyValue> kvs : put.getFamilyMap().values()) {
+      for (KeyValue kv : kvs) {
+        distributedPut.add(withRow(kv, row));
+      }
+    }
+    return distributedPut;
+  }
+
+  /**
+   * Creates KeyValue identical to the given one, but with another row.
+   * @param kv KeyValue to copy
+   * @param row row of the created KeyValue
+   * @return copy of the KeyValue
+   */
+  static KeyValue withRow(KeyValue kv, byte[] row) {
+    byte[] buffer = kv.getBuffer();
+    return new KeyValue(row, 0, row.length,
+            buffer, kv.getFamilyOffset(), kv.getFamilyLength(),
+            buffer, kv.getQualifierOffset(), kv.getQualifierLength(),
+            kv.getTimestamp(), KeyValue.Type.codeToType(kv.getType()),
+            buffer, kv.getValueOffset(), kv.getValueLength());
+  }
+
+  private static class PutsGroup {
+    private final List<Put> puts = new ArrayList<Put>();
+    private long size = 0;
+  }
+
+  private class FlushTask implements Runnable {
+    private final PutsGroup group;
+
+    private FlushTask(PutsGroup group) {
+      this.group = group;
+    }
+
+    @Override
+    public void run() {
+      IOException error = null;
+      HTable table = null;
+      try {
+        table = getTable();
+        table.put(group.puts);
+        table.flushCommits();
+      } catch (IOException e) {
+        error = e;
+      } catch (RuntimeException e) {
+        error = new IOException(e);
+      } finally {
+        List<Put> unwritten = Collections.emptyList();
+        if (error != null) {
+          if (table == null) {
+            unwritten = group.puts;
+          } else {
+            // HTable keeps the puts it failed to write in its write buffer, they are not left there for the next flush
+            unwritten = new ArrayList<Put>(table.getWriteBuffer());
+            table.getWriteBuffer().clear();
+          }
+        }
+        flushed(group, error, unwritten);
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Server-side filter which passes only rows falling into one of the given row ranges and seeks over the gaps between
+ * them, so that one scanner can serve several intervals of the same region. Optionally wraps another filter which is
+ * applied to the rows within ranges (wrapping is used instead of FilterList which doesn't pass seek hints).
+ * NOTE: this class must be on the region servers classpath.
+ */
+public class MultiRangeFilter extends FilterBase {
+  // sorted non-overlapping ranges, empty stop key means no limit
+  private byte[][] startKeys;
+  private byte[][] stopKeys;
+  private Filter filter;
+
+  // index of the range which current row falls into or is before
+  private int current = 0;
+  private boolean inGap = false;
+  private boolean done = false;
+
+  /**
+   * For reflection, do NOT use it.
+   */
+  public MultiRangeFilter() {}
+
+  /**
+   * @param startKeys start keys of the ranges (inclusive), sorted
+   * @param stopKeys stop keys of the ranges (exclusive), ranges must not overlap
+   * @param filter filter to apply to the rows within ranges, can be null
+   */
+  public MultiRangeFilter(byte[][] startKeys, byte[][] stopKeys, Filter filter) {
+    if (startKeys.length != stopKeys.length) {
+      throw new IllegalArgumentException("Number of start and stop keys should be the same");
+    }
+    this.startKeys = startKeys;
+    this.stopKeys = stopKeys;
+    this.filter = filter;
+  }
+
+  @Override
+  public boolean filterRowKey(byte[] buffer, int offset, int length) {
+    while (current < startKeys.length && stopKeys[current].length > 0 &&
+            Bytes.compareTo(stopKeys[current], 0, stopKeys[current].length, buffer, offset, length) <= 0) {
+      current++;
+    }
+    if (current == startKeys.length) {
+      done = true;
+      return true;
+    }
+
+    // not filtering out rows in gaps here, so that we can seek to the next range with the first KeyValue
+    inGap = Bytes.compareTo(buffer, offset, length, startKeys[current], 0, startKeys[current].length) < 0;
+    return !inGap && filter != null && filter.filterRowKey(buffer, offset, length);
+  }
+
+  @Override
+  public boolean filterAllRemaining() {
+    return done || (filter != null && filter.filterAllRemaining());
+  }
+
+  @Override
+  public ReturnCode filterKeyValue(KeyValue kv) {
+    if (inGap) {
+      return ReturnCode.SEEK_NEXT_USING_HINT;
+    }
+    return filter == null ? ReturnCode.INCLUDE : filter.filterKeyValue(kv);
+  }
+
+  @Override
+  public KeyValue getNextKeyHint(KeyValue currentKV) {
+    if (inGap) {
+      return KeyValue.createFirstOnRow(startKeys[current]);
+    }
+    return filter == null ? null : filter.getNextKeyHint(currentKV);
+  }
+
+  @Override
+  public void reset() {
+    if (filter != null) {
+      filter.reset();
+    }
+  }
+
+  @Override
+  public void filterRow(List<KeyValue> kvs) {
+    if (!inGap && filter != null) {
+      filter.filterRow(kvs);
+    }
+  }
+
+  @Override
+  public boolean hasFilterRow() {
+    return filter != null && filter.hasFilterRow();
+  }
+
+  @Override
+  public boolean filterRow() {
+    return inGap || (filter != null && filter.filterRow());
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(startKeys.length);
+    for (int i = 0; i < startKeys.length; i++) {
+      Bytes.writeByteArray(out, startKeys[i]);
+      Bytes.writeByteArray(out, stopKeys[i]);
+    }
+    out.writeBoolean(filter != null);
+    if (filter != null) {
+      out.writeUTF(filter.getClass().getName());
+      filter.write(out);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int count = in.readInt();
+    startKeys = new byte[count][];
+    stopKeys = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      startKeys[i] = Bytes.readByteArray(in);
+      stopKeys[i] = Bytes.readByteArray(in);
+    }
+    filter = null;
+    if (in.readBoolean()) {
+      String className = in.readUTF();
+      try {
+        filter = (Filter) Class.forName(className).newInstance();
+      } catch (Exception e) {
+        throw new IOException("Failed to create wrapped filter " + className + ": " + e.getMessage());
+      }
+      filter.readFields(in);
+    }
+    current = 0;
+    inGap = false;
+    done = false;
+  }
+
+  // for tests
+  byte[][] getStartKeys() {
+    return startKeys;
+  }
+
+  byte[][] getStopKeys() {
+    return stopKeys;
+  }
+
+  Filter getFilter() {
+    return filter;
+  }
+}
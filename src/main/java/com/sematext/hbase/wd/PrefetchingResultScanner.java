@@ -0,0 +1,111 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+/**
+ * Scanner which drains wrapped {@link ResultScanner} in the background into a bounded queue, so that several scanners
+ * can be advanced in parallel while the caller consumes the results.
+ * NOTE: provided executor must be able to run workers of all scanners which are consumed together at the same time,
+ * otherwise consumer may wait for a worker which was never started.
+ */
+public class PrefetchingResultScanner implements ResultScanner {
+  private final BlockingQueue<Result> queue;
+  private final ResultScannerDrainer drainer;
+  private boolean closed = false;
+  private boolean exhausted = false;
+
+  /**
+   * Creates a new instance of this class and submits its worker to the executor.
+   * @param scanner scanner to drain, is closed by this scanner
+   * @param queueSize max number of prefetched results to hold
+   * @param executor executor to run background worker with
+   */
+  public PrefetchingResultScanner(ResultScanner scanner, int queueSize, Executor executor) {
+    this.queue = new ArrayBlockingQueue<Result>(Math.max(1, queueSize));
+    this.drainer = new ResultScannerDrainer(scanner, queue);
+    executor.execute(drainer);
+  }
+
+  @Override
+  public Result next() throws IOException {
+    // end marker is not put into the queue of the closed scanner
+    if (closed || exhausted) {
+      return null;
+    }
+
+    Result result;
+    try {
+      result = queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for prefetched results");
+    }
+
+    if (result == ResultScannerDrainer.END_OF_DATA) {
+      exhausted = true;
+      if (drainer.getFailure() != null) {
+        throw drainer.getFailure();
+      }
+      return null;
+    }
+
+    return result;
+  }
+
+  @Override
+  public Result[] next(int nbRows) throws IOException {
+    // Identical to HTable.ClientScanner implementation
+    // Collect values to be returned here
+    ArrayList<Result> resultSets = new ArrayList<Result>(nbRows);
+    for(int i = 0; i < nbRows; i++) {
+      Result next = next();
+      if (next != null) {
+        resultSets.add(next);
+      } else {
+        break;
+      }
+    }
+    return resultSets.toArray(new Result[resultSets.size()]);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    drainer.stop();
+    // freeing space for the worker which may be waiting to put next result
+    queue.clear();
+    drainer.awaitStopped();
+  }
+
+  @Override
+  public Iterator<Result> iterator() {
+    return new ResultScannerIterator(this);
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+/**
+ * Plans scans over distributed data based on the table regions: instead of a scan per bucket creates at most one scan
+ * per region which covers all bucket intervals falling into it. Gaps between intervals within a region are skipped
+ * on the server side with {@link MultiRangeFilter}.
+ * NOTE: rows are returned by such scans ordered by distributed keys, i.e. they can be used when the order of the
+ * original keys doesn't matter (see {@link DistributedScanner#createUnordered(HTable, Scan, AbstractRowKeyDistributor)}).
+ */
+public final class RegionScanPlanner {
+  private static final Comparator<Pair<byte[], byte[]>> START_KEY_COMPARATOR = new Comparator<Pair<byte[], byte[]>>() {
+    @Override
+    public int compare(Pair<byte[], byte[]> interval1, Pair<byte[], byte[]> interval2) {
+      return Bytes.compareTo(interval1.getFirst(), interval2.getFirst());
+    }
+  };
+
+  private RegionScanPlanner() {}
+
+  /**
+   * Creates scans which together cover all rows matched by the original scan.
+   * @param hTable table to scan
+   * @param original original scan (with original start/stop keys)
+   * @param keyDistributor distributor used to write the data
+   * @return at most one scan per table region, empty if scan matches no rows
+   * @throws IOException when region boundaries can't be fetched
+   */
+  public static Scan[] getScans(HTable hTable, Scan original, AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    Pair<byte[], byte[]>[] intervals = keyDistributor.getDistributedIntervals(original.getStartRow(), original.getStopRow());
+    return getScans(original, intervals, hTable.getStartKeys());
+  }
+
+  static Scan[] getScans(Scan original, Pair<byte[], byte[]>[] intervals, byte[][] regionStartKeys)
+          throws IOException {
+    List<Pair<byte[], byte[]>> ranges = merge(intervals);
+    byte[][] regionStarts = Arrays.copyOf(regionStartKeys, regionStartKeys.length);
+    Arrays.sort(regionStarts, Bytes.BYTES_COMPARATOR);
+
+    List<Scan> scans = new ArrayList<Scan>();
+    int first = 0;
+    for (int i = 0; i < regionStarts.length; i++) {
+      byte[] regionStart = regionStarts[i];
+      byte[] regionStop = i + 1 < regionStarts.length ? regionStarts[i + 1] : HConstants.EMPTY_END_ROW;
+      List<byte[]> startKeys = new ArrayList<byte[]>();
+      List<byte[]> stopKeys = new ArrayList<byte[]>();
+      for (int k = first; k < ranges.size(); k++) {
+        byte[] start = ranges.get(k).getFirst();
+        byte[] stop = ranges.get(k).getSecond();
+        if (regionStop.length > 0 && Bytes.compareTo(start, regionStop) >= 0) {
+          // this and next ranges are in next regions
+          break;
+        }
+        if (stop.length > 0 && Bytes.compareTo(stop, regionStart) <= 0) {
+          // range is before this region
+          first = k + 1;
+          continue;
+        }
+        startKeys.add(Bytes.compareTo(start, regionStart) > 0 ? start : regionStart);
+        stopKeys.add(min(stop, regionStop));
+      }
+
+      if (!startKeys.isEmpty()) {
+        Scan scan = new Scan(original);
+        scan.setStartRow(startKeys.get(0));
+        scan.setStopRow(stopKeys.get(stopKeys.size() - 1));
+        if (startKeys.size() > 1) {
+          scan.setFilter(new MultiRangeFilter(startKeys.toArray(new byte[startKeys.size()][]),
+                  stopKeys.toArray(new byte[stopKeys.size()][]), original.getFilter()));
+        }
+        scans.add(scan);
+      }
+    }
+
+    return scans.toArray(new Scan[scans.size()]);
+  }
+
+  /**
+   * @return sorted intervals with empty ones dropped and adjacent or overlapping ones merged
+   */
+  private static List<Pair<byte[], byte[]>> merge(Pair<byte[], byte[]>[] intervals) {
+    List<Pair<byte[], byte[]>> sorted = new ArrayList<Pair<byte[], byte[]>>();
+    for (Pair<byte[], byte[]> interval : intervals) {
+      byte[] stop = interval.getSecond();
+      if (stop.length == 0 || Bytes.compareTo(interval.getFirst(), stop) < 0) {
+        sorted.add(interval);
+      }
+    }
+    Collections.sort(sorted, START_KEY_COMPARATOR);
+
+    List<Pair<byte[], byte[]>> merged = new ArrayList<Pair<byte[], byte[]>>();
+    byte[] start = null;
+    byte[] stop = null;
+    for (Pair<byte[], byte[]> interval : sorted) {
+      if (start != null && (stop.length == 0 || Bytes.compareTo(interval.getFirst(), stop) <= 0)) {
+        stop = max(stop, interval.getSecond());
+        continue;
+      }
+      if (start != null) {
+        merged.add(new Pair<byte[], byte[]>(start, stop));
+      }
+      start = interval.getFirst();
+      stop = interval.getSecond();
+    }
+    if (start != null) {
+      merged.add(new Pair<byte[], byte[]>(start, stop));
+    }
+
+    return merged;
+  }
+
+  // empty stop key means no limit
+  private static byte[] min(byte[] stopKey1, byte[] stopKey2) {
+    if (stopKey1.length == 0) {
+      return stopKey2;
+    }
+    if (stopKey2.length == 0) {
+      return stopKey1;
+    }
+    return Bytes.compareTo(stopKey1, stopKey2) <= 0 ? stopKey1 : stopKey2;
+  }
+
+  private static byte[] max(byte[] stopKey1, byte[] stopKey2) {
+    if (stopKey1.length == 0 || stopKey2.length == 0) {
+      return HConstants.EMPTY_END_ROW;
+    }
+    return Bytes.compareTo(stopKey1, stopKey2) >= 0 ? stopKey1 : stopKey2;
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+/**
+ * Background worker which moves results of the scanner into a bounded queue and puts {@link #END_OF_DATA} into it
+ * when scanner is exhausted or failed. Several drainers may share the same queue.
+ */
+class ResultScannerDrainer implements Runnable {
+  /** Marks the end of the scanner's data (or its failure) in the queue */
+  static final Result END_OF_DATA = new Result();
+  // Interval to re-check whether drainer was stopped while waiting for the free space in the queue
+  private static final long OFFER_TIMEOUT_MS = 100;
+
+  private final ResultScanner scanner;
+  private final BlockingQueue<Result> queue;
+  private final AtomicBoolean started = new AtomicBoolean(false);
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private volatile boolean stopped = false;
+  private volatile IOException failure = null;
+
+  /**
+   * @param scanner scanner to drain, is closed by this drainer
+   * @param queue queue to put results to
+   */
+  ResultScannerDrainer(ResultScanner scanner, BlockingQueue<Result> queue) {
+    this.scanner = scanner;
+    this.queue = queue;
+  }
+
+  /** @return error the scanner failed with, to be checked after {@link #END_OF_DATA} was received */
+  IOException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Tells drainer to stop putting results into the queue. Consumer should free space in the queue after calling it,
+   * so that drainer doesn't wait for it, and then wait for drainer with {@link #awaitStopped()}.
+   */
+  void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Waits till the drainer stops and closes the scanner. Should be called after {@link #stop()}.
+   */
+  void awaitStopped() {
+    if (started.compareAndSet(false, true)) {
+      // drainer hasn't started yet and will not start at all
+      scanner.close();
+      finished.countDown();
+      return;
+    }
+
+    // drainer closes the scanner itself, waiting for it to avoid closing scanner which is being advanced
+    try {
+      finished.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    if (!started.compareAndSet(false, true)) {
+      // drainer was stopped before it started
+      return;
+    }
+
+    boolean interrupted = false;
+    try {
+      try {
+        Result result = scanner.next();
+        while (result != null && offer(result)) {
+          result = scanner.next();
+        }
+      } catch (IOException e) {
+        failure = e;
+      } catch (RuntimeException e) {
+        failure = new IOException(e);
+      } catch (InterruptedException e) {
+        interrupted = true;
+        failure = new InterruptedIOException("Interrupted while draining scanner");
+      } finally {
+        scanner.close();
+      }
+
+      // consumer waits for the end marker, so it must be put even if this thread is interrupted
+      while (true) {
+        try {
+          offer(END_OF_DATA);
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      finished.countDown();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** @return false if drainer was stopped meanwhile */
+  private boolean offer(Result result) throws InterruptedException {
+    while (!stopped) {
+      if (queue.offer(result, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
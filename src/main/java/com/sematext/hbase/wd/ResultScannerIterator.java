@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+/**
+ * Iterator over {@link ResultScanner}, shared by scanners of this package
+ */
+class ResultScannerIterator implements Iterator<Result> {
+  // Identical to HTable.ClientScanner implementation
+  private final ResultScanner scanner;
+
+  // The next RowResult, possibly pre-read
+  private Result next = null;
+
+  ResultScannerIterator(ResultScanner scanner) {
+    this.scanner = scanner;
+  }
+
+  // return true if there is another item pending, false if there isn't.
+  // this method is where the actual advancing takes place, but you need
+  // to call next() to consume it. hasNext() will only advance if there
+  // isn't a pending next().
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        next = scanner.next();
+        return next != null;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return true;
+  }
+
+  // get the pending next item and advance the iterator. returns null if
+  // there is no next item.
+  @Override
+  public Result next() {
+    // since hasNext() does the real advancing, we call this to determine
+    // if there is a next before proceeding.
+    if (!hasNext()) {
+      return null;
+    }
+
+    // if we get to here, then hasNext() has given us an item to return.
+    // we want to return the item and then null out the next pointer, so
+    // we use a temporary variable.
+    Result temp = next;
+    next = null;
+    return temp;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
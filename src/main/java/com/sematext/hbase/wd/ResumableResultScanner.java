@@ -0,0 +1,198 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.NotServingRegionException;
+import org.apache.hadoop.hbase.UnknownScannerException;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.ScannerTimeoutException;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Scanner which survives failures of the wrapped scanner: on a transient error (scanner lease expired while the client
+ * was busy with other buckets, region moved or connection failed) scanner is reopened right after the last returned
+ * row.
+ * NOTE: scans with batch set (rows returned in parts) can't be resumed, the rest of the last row would be skipped.
+ */
+public class ResumableResultScanner implements ResultScanner {
+  private static final byte[] ZERO_BYTE = new byte[] {0};
+
+  private final HTable hTable;
+  private final Scan scan;
+  private final int retries;
+  private final long pause;
+  private ResultScanner scanner;
+  private byte[] lastRow = null;
+  private boolean closed = false;
+
+  /**
+   * @param hTable table to reopen scanner with
+   * @param scan scan the scanner was opened with
+   * @param scanner scanner to wrap, is closed by this scanner
+   * @param retries max number of consecutive reopening attempts
+   * @param pause time (in ms) to wait before reopening
+   */
+  public ResumableResultScanner(HTable hTable, Scan scan, ResultScanner scanner, int retries, long pause) {
+    this.hTable = hTable;
+    this.scan = scan;
+    this.scanner = scanner;
+    this.retries = retries;
+    this.pause = pause;
+  }
+
+  @Override
+  public Result next() throws IOException {
+    if (closed) {
+      return null;
+    }
+    int failures = 0;
+    while (true) {
+      try {
+        Result result = getScanner().next();
+        if (result != null) {
+          lastRow = result.getRow();
+        }
+        return result;
+      } catch (IOException e) {
+        failures = onFailure(e, failures);
+      }
+    }
+  }
+
+  @Override
+  public Result[] next(int nbRows) throws IOException {
+    if (closed) {
+      return new Result[0];
+    }
+    int failures = 0;
+    while (true) {
+      try {
+        Result[] results = getScanner().next(nbRows);
+        if (results.length > 0) {
+          lastRow = results[results.length - 1].getRow();
+        }
+        return results;
+      } catch (IOException e) {
+        failures = onFailure(e, failures);
+      }
+    }
+  }
+
+  private ResultScanner getScanner() throws IOException {
+    if (scanner == null) {
+      scanner = openScanner(getResumedScan());
+    }
+    return scanner;
+  }
+
+  /**
+   * Closes failed scanner and waits before reopening it, or rethrows the error when it can't be retried.
+   * @return number of failures, including this one
+   */
+  private int onFailure(IOException e, int failures) throws IOException {
+    if (!isRetryable(e) || failures >= retries) {
+      throw e;
+    }
+    closeScanner();
+    sleep();
+    return failures + 1;
+  }
+
+  /**
+   * Opens scanner, used to reopen it after failure.
+   */
+  ResultScanner openScanner(Scan scan) throws IOException {
+    return hTable.getScanner(scan);
+  }
+
+  Scan getResumedScan() throws IOException {
+    Scan resumed = new Scan(scan);
+    if (lastRow != null) {
+      resumed.setStartRow(getRowAfter(lastRow));
+    }
+    return resumed;
+  }
+
+  /**
+   * @return smallest row which is greater than the given one
+   */
+  static byte[] getRowAfter(byte[] row) {
+    return Bytes.add(row, ZERO_BYTE);
+  }
+
+  /**
+   * Only transient errors (or errors caused by them) are retried: scanner timeouts, which are
+   * {@link DoNotRetryIOException}s for the scanner which has failed, but not for the scan, region moves and connection
+   * failures. Other errors (e.g. bad filter or missing table) would only fail again after the pause.
+   */
+  static boolean isRetryable(IOException e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof ScannerTimeoutException || t instanceof UnknownScannerException
+              || t instanceof NotServingRegionException || t instanceof ConnectException
+              || t instanceof SocketTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void sleep() throws InterruptedIOException {
+    try {
+      Thread.sleep(pause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to reopen scanner");
+    }
+  }
+
+  private void closeScanner() {
+    if (scanner == null) {
+      // failed to open
+      return;
+    }
+    try {
+      scanner.close();
+    } catch (RuntimeException e) {
+      // failed scanner may fail to close, it is abandoned anyway
+    }
+    scanner = null;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (scanner != null) {
+      scanner.close();
+      scanner = null;
+    }
+  }
+
+  @Override
+  public Iterator<Result> iterator() {
+    return new ResultScannerIterator(this);
+  }
+}
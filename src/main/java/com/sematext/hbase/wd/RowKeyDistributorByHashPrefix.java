@@ -42,7 +42,17 @@ public class RowKeyDistributorByHashPrefix extends AbstractRowKeyDistributor {
     int getPrefixLength(byte[] adjustedKey);
   }
 
-  public static class OneByteSimpleHash implements Hasher {
+  /**
+   * Hasher which can hash a part of the array, so that keys don't need to be copied to compute their prefixes
+   */
+  public static interface RangeHasher extends Hasher {
+    /**
+     * @return prefix of the original key held in the given part of the array, must not be modified by the caller
+     */
+    byte[] getHashPrefix(byte[] buffer, int offset, int length);
+  }
+
+  public static class OneByteSimpleHash implements RangeHasher {
     private int mod;
 
     /**
@@ -75,11 +85,17 @@ public class RowKeyDistributorByHashPrefix extends AbstractRowKeyDistributor {
 
     @Override
     public byte[] getHashPrefix(byte[] originalKey) {
+      return new byte[] {getHashPrefix(originalKey, 0, originalKey.length)[0]};
+    }
+
+    @Override
+    public byte[] getHashPrefix(byte[] buffer, int offset, int length) {
       long hash = 0;
-      for (byte b : originalKey) {
-        hash = (hash << Byte.SIZE) + (b & 0xff);
+      for (int i = offset; i < offset + length; i++) {
+        hash = (hash << Byte.SIZE) + (buffer[i] & 0xff);
       }
-      return new byte[] {(byte) (hash % mod)};
+      // same prefix as (byte) (hash % mod): the remainder is negative when hash overflows to a negative value
+      return PREFIXES[(int) (hash % mod) & 0xff];
     }
 
     @Override
@@ -103,6 +119,127 @@ public class RowKeyDistributorByHashPrefix extends AbstractRowKeyDistributor {
     }
   }
 
+  /**
+   * Hasher based on MurmurHash3 (x86_32) of the whole original key, spreads keys evenly even when they differ only in
+   * a few bytes or share common prefix/suffix patterns. Uses one byte prefixes for up to 256 buckets and two byte
+   * prefixes for up to 65536 buckets.
+   */
+  public static class MurmurHash implements RangeHasher {
+    private static final int MAX_BUCKETS = 1 << (2 * Byte.SIZE);
+    private static final int SEED = 0x9747b28c;
+
+    private int maxBuckets;
+    // Should not be changed as instances are returned to the caller
+    private byte[][] prefixes;
+
+    /**
+     * For reflection, do NOT use it.
+     */
+    public MurmurHash() {}
+
+    /**
+     * Creates a new instance of this class.
+     * @param maxBuckets max buckets number, should be in 1...65536 range
+     */
+    public MurmurHash(int maxBuckets) {
+      init(maxBuckets);
+    }
+
+    private void init(int maxBuckets) {
+      if (maxBuckets < 1 || maxBuckets > MAX_BUCKETS) {
+        throw new IllegalArgumentException("maxBuckets should be in 1.." + MAX_BUCKETS + " range");
+      }
+      this.maxBuckets = maxBuckets;
+      this.prefixes = new byte[maxBuckets][];
+      for (int i = 0; i < maxBuckets; i++) {
+        prefixes[i] = maxBuckets <= 256 ? new byte[] {(byte) i} : new byte[] {(byte) (i >>> Byte.SIZE), (byte) i};
+      }
+    }
+
+    @Override
+    public byte[] getHashPrefix(byte[] originalKey) {
+      return getHashPrefix(originalKey, 0, originalKey.length);
+    }
+
+    @Override
+    public byte[] getHashPrefix(byte[] buffer, int offset, int length) {
+      int hash = hash(buffer, offset, length, SEED);
+      return prefixes[(int) ((hash & 0xffffffffL) % maxBuckets)];
+    }
+
+    @Override
+    public byte[][] getAllPossiblePrefixes() {
+      return Arrays.copyOf(prefixes, prefixes.length);
+    }
+
+    @Override
+    public int getPrefixLength(byte[] adjustedKey) {
+      return prefixes[0].length;
+    }
+
+    @Override
+    public String getParamsToStore() {
+      return String.valueOf(maxBuckets);
+    }
+
+    @Override
+    public void init(String storedParams) {
+      init(Integer.valueOf(storedParams));
+    }
+
+    /**
+     * MurmurHash3 x86_32 by Austin Appleby
+     */
+    static int hash(byte[] data, int offset, int length, int seed) {
+      final int c1 = 0xcc9e2d51;
+      final int c2 = 0x1b873593;
+
+      int h1 = seed;
+      int roundedEnd = offset + (length & 0xfffffffc);
+      for (int i = offset; i < roundedEnd; i += 4) {
+        // little endian load order
+        int k1 = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | (data[i + 3] << 24);
+        k1 *= c1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= c2;
+
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+      }
+
+      // tail
+      int k1 = 0;
+      switch (length & 0x03) {
+        case 3:
+          k1 = (data[roundedEnd + 2] & 0xff) << 16;
+          // fallthrough
+        case 2:
+          k1 |= (data[roundedEnd + 1] & 0xff) << 8;
+          // fallthrough
+        case 1:
+          k1 |= data[roundedEnd] & 0xff;
+          k1 *= c1;
+          k1 = Integer.rotateLeft(k1, 15);
+          k1 *= c2;
+          h1 ^= k1;
+          break;
+        default:
+          break;
+      }
+
+      // finalization
+      h1 ^= length;
+      h1 ^= h1 >>> 16;
+      h1 *= 0x85ebca6b;
+      h1 ^= h1 >>> 13;
+      h1 *= 0xc2b2ae35;
+      h1 ^= h1 >>> 16;
+
+      return h1;
+    }
+  }
+
   @Override
   public byte[] getDistributedKey(byte[] originalKey) {
     return Bytes.add(hasher.getHashPrefix(originalKey), originalKey);
@@ -110,7 +247,7 @@ public class RowKeyDistributorByHashPrefix extends AbstractRowKeyDistributor {
 
   @Override
   public byte[] getOriginalKey(byte[] adjustedKey) {
-    int prefixLength = hasher.getPrefixLength(adjustedKey);
+    int prefixLength = getPrefixLength(adjustedKey);
     if (prefixLength > 0) {
       return Bytes.tail(adjustedKey, adjustedKey.length - prefixLength);
     } else {
@@ -118,6 +255,31 @@ public class RowKeyDistributorByHashPrefix extends AbstractRowKeyDistributor {
     }
   }
 
+  @Override
+  public boolean hasSuffixOriginalKey() {
+    return true;
+  }
+
+  @Override
+  public int getPrefixLength(byte[] adjustedKey) {
+    return hasher.getPrefixLength(adjustedKey);
+  }
+
+  @Override
+  public int compareDistributedKeys(byte[] originalKey1, int offset1, int length1,
+                                    byte[] originalKey2, int offset2, int length2) {
+    if (!(hasher instanceof RangeHasher)) {
+      return super.compareDistributedKeys(originalKey1, offset1, length1, originalKey2, offset2, length2);
+    }
+    byte[] prefix1 = ((RangeHasher) hasher).getHashPrefix(originalKey1, offset1, length1);
+    byte[] prefix2 = ((RangeHasher) hasher).getHashPrefix(originalKey2, offset2, length2);
+    if (prefix1.length != prefix2.length) {
+      return super.compareDistributedKeys(originalKey1, offset1, length1, originalKey2, offset2, length2);
+    }
+    int result = Bytes.compareTo(prefix1, prefix2);
+    return result != 0 ? result : Bytes.compareTo(originalKey1, offset1, length1, originalKey2, offset2, length2);
+  }
+
   @Override
   public byte[][] getAllDistributedKeys(byte[] originalKey) {
     byte[][] allPrefixes = hasher.getAllPossiblePrefixes();
@@ -15,11 +15,17 @@
  */
 package com.sematext.hbase.wd;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * Provides handy methods to distribute
  *
+ * Assigns buckets in round-robin manner. Is safe to be shared between writing threads: each thread walks over buckets
+ * on its own (starting from different buckets), so that no state is shared on write path and records are still evenly
+ * distributed (difference between buckets sizes is not more than the number of writing threads).
+ *
  * @author Alex Baranau
  */
 public class RowKeyDistributorByOneBytePrefix extends AbstractRowKeyDistributor {
@@ -33,7 +39,13 @@ public class RowKeyDistributorByOneBytePrefix extends AbstractRowKeyDistributor
   }
 
   private byte maxPrefix;
-  private byte nextPrefix;
+  private final AtomicInteger threadsCount = new AtomicInteger();
+  private final ThreadLocal<int[]> nextPrefix = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[] {(threadsCount.getAndIncrement() & Integer.MAX_VALUE) % maxPrefix};
+    }
+  };
 
   /** Constructor reflection. DO NOT USE */
   public RowKeyDistributorByOneBytePrefix() {
@@ -41,22 +53,39 @@ public class RowKeyDistributorByOneBytePrefix extends AbstractRowKeyDistributor
 
   public RowKeyDistributorByOneBytePrefix(byte bucketsCount) {
     this.maxPrefix = bucketsCount;
-    this.nextPrefix = 0;
   }
 
   @Override
   public byte[] getDistributedKey(byte[] originalKey) {
-    byte[] key = Bytes.add(PREFIXES[nextPrefix++], originalKey);
-    nextPrefix = (byte) (nextPrefix % maxPrefix);
+    int[] next = nextPrefix.get();
+    byte[] key = Bytes.add(PREFIXES[next[0]], originalKey);
+    if (++next[0] == maxPrefix) {
+      next[0] = 0;
+    }
 
     return key;
   }
 
+  @Override
+  public boolean isKeyDeterministic() {
+    return false;
+  }
+
   @Override
   public byte[] getOriginalKey(byte[] adjustedKey) {
     return Bytes.tail(adjustedKey, adjustedKey.length - 1);
   }
 
+  @Override
+  public boolean hasSuffixOriginalKey() {
+    return true;
+  }
+
+  @Override
+  public int getPrefixLength(byte[] adjustedKey) {
+    return 1;
+  }
+
   @Override
   public byte[][] getAllDistributedKeys(byte[] originalKey) {
     return getAllDistributedKeys(originalKey, maxPrefix);
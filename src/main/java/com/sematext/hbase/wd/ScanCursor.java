@@ -0,0 +1,141 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Writables;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Position of {@link DistributedScanner} in each of the buckets: the last row returned from the bucket, or whether
+ * the bucket is exhausted. Scan can be continued from the cursor exactly where it stopped (e.g. to fetch next page),
+ * see {@link DistributedScanner#create(org.apache.hadoop.hbase.client.HTable, Scan, AbstractRowKeyDistributor,
+ * ScanCursor, int)}.
+ */
+public class ScanCursor implements Writable {
+  private static final byte NOT_STARTED = 0;
+  private static final byte POSITIONED = 1;
+  private static final byte EXHAUSTED = 2;
+
+  private byte[][] lastRows;
+  private boolean[] exhausted;
+
+  /**
+   * For reflection, do NOT use it.
+   */
+  public ScanCursor() {
+  }
+
+  ScanCursor(byte[][] lastRows, boolean[] exhausted) {
+    this.lastRows = lastRows;
+    this.exhausted = exhausted;
+  }
+
+  /**
+   * @return true if all buckets are exhausted, i.e. there are no more rows to scan
+   */
+  public boolean isExhausted() {
+    for (boolean bucketExhausted : exhausted) {
+      if (!bucketExhausted) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return last row returned from the bucket, null if there was none
+   */
+  byte[] getLastRow(int bucket) {
+    return lastRows[bucket];
+  }
+
+  /**
+   * Positions buckets' scans after the last rows returned from them.
+   * @param scans buckets' scans of the same scan the cursor was created for
+   * @return scans to continue with, null for the exhausted buckets
+   */
+  Scan[] resume(Scan[] scans) {
+    if (scans.length != lastRows.length) {
+      throw new IllegalArgumentException("Cursor was created for " + lastRows.length + " buckets, scan has "
+              + scans.length);
+    }
+
+    Scan[] resumed = new Scan[scans.length];
+    for (int i = 0; i < scans.length; i++) {
+      if (!exhausted[i]) {
+        resumed[i] = scans[i];
+        if (lastRows[i] != null) {
+          resumed[i].setStartRow(ResumableResultScanner.getRowAfter(lastRows[i]));
+        }
+      }
+    }
+    return resumed;
+  }
+
+  /**
+   * @return serialized cursor
+   * @throws IOException if serialization failed
+   */
+  public byte[] toBytes() throws IOException {
+    return Writables.getBytes(this);
+  }
+
+  /**
+   * @param bytes serialized cursor, see {@link #toBytes()}
+   * @return deserialized cursor
+   * @throws IOException if deserialization failed
+   */
+  public static ScanCursor fromBytes(byte[] bytes) throws IOException {
+    return (ScanCursor) Writables.getWritable(bytes, new ScanCursor());
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, lastRows.length);
+    for (int i = 0; i < lastRows.length; i++) {
+      if (exhausted[i]) {
+        out.writeByte(EXHAUSTED);
+      } else if (lastRows[i] == null) {
+        out.writeByte(NOT_STARTED);
+      } else {
+        out.writeByte(POSITIONED);
+        Bytes.writeByteArray(out, lastRows[i]);
+      }
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int count = WritableUtils.readVInt(in);
+    lastRows = new byte[count][];
+    exhausted = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      byte state = in.readByte();
+      if (state == EXHAUSTED) {
+        exhausted[i] = true;
+      } else if (state == POSITIONED) {
+        lastRows[i] = Bytes.readByteArray(in);
+      }
+    }
+  }
+}
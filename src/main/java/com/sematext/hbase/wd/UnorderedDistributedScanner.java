@@ -0,0 +1,134 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+/**
+ * Scanner for the data written with keys distribution which doesn't preserve the order of the original keys.
+ * All buckets' scanners are drained in parallel into one shared queue and rows are returned as soon as any of the
+ * buckets has them, so no time is spent on merging and slow buckets don't hold the others.
+ */
+public class UnorderedDistributedScanner implements ResultScanner {
+  private final BlockingQueue<Result> queue;
+  private final ResultScannerDrainer[] drainers;
+  private final ExecutorService executor;
+  private int activeDrainers;
+  private boolean closed = false;
+  // failure of any of the buckets, the scan can't be completed after it
+  private IOException failure = null;
+
+  /**
+   * Creates a new instance of this class and starts draining the scanners.
+   * @param scanners buckets' scanners, are closed by this scanner
+   * @param queueSize max number of fetched results to hold for all buckets
+   */
+  public UnorderedDistributedScanner(ResultScanner[] scanners, int queueSize) {
+    this.queue = new ArrayBlockingQueue<Result>(Math.max(1, queueSize));
+    this.drainers = new ResultScannerDrainer[scanners.length];
+    this.activeDrainers = scanners.length;
+    this.executor = Executors.newFixedThreadPool(Math.max(1, scanners.length),
+            new DaemonThreadFactory("wd-unordered-scan"));
+    for (int i = 0; i < scanners.length; i++) {
+      drainers[i] = new ResultScannerDrainer(scanners[i], queue);
+      executor.execute(drainers[i]);
+    }
+  }
+
+  @Override
+  public Result next() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    // end markers are not put into the queue of the closed scanner
+    if (closed) {
+      return null;
+    }
+
+    while (activeDrainers > 0) {
+      Result result;
+      try {
+        result = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for results");
+      }
+
+      if (result != ResultScannerDrainer.END_OF_DATA) {
+        return result;
+      }
+
+      activeDrainers--;
+      for (ResultScannerDrainer drainer : drainers) {
+        if (drainer.getFailure() != null) {
+          // the scan can't be completed, the rest of the results are of no use
+          failure = drainer.getFailure();
+          throw failure;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public Result[] next(int nbRows) throws IOException {
+    // Identical to HTable.ClientScanner implementation
+    // Collect values to be returned here
+    ArrayList<Result> resultSets = new ArrayList<Result>(nbRows);
+    for(int i = 0; i < nbRows; i++) {
+      Result next = next();
+      if (next != null) {
+        resultSets.add(next);
+      } else {
+        break;
+      }
+    }
+    return resultSets.toArray(new Result[resultSets.size()]);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (ResultScannerDrainer drainer : drainers) {
+      drainer.stop();
+    }
+    // freeing space for the workers which may be waiting to put next result
+    queue.clear();
+    for (ResultScannerDrainer drainer : drainers) {
+      drainer.awaitStopped();
+    }
+    executor.shutdown();
+  }
+
+  @Override
+  public Iterator<Result> iterator() {
+    return new ResultScannerIterator(this);
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Reads rows of all table splits of {@link WdCombinedTableSplit}: one after another or all of them in parallel (rows
+ * order is not preserved then, see {@link UnorderedDistributedScanner}).
+ */
+public class WdCombinedTableRecordReader extends RecordReader<ImmutableBytesWritable, Result> {
+  private final HTable hTable;
+  private final Scan scan;
+  private final boolean parallel;
+
+  private List<TableSplit> splits;
+  private int nextSplit = 0;
+  private boolean readingInParallel = false;
+  private ResultScanner scanner;
+  private final ImmutableBytesWritable key = new ImmutableBytesWritable();
+  private Result value;
+
+  /**
+   * @param hTable table to read from
+   * @param scan scan to apply to each of the table splits
+   * @param parallel whether to read all table splits in parallel
+   */
+  public WdCombinedTableRecordReader(HTable hTable, Scan scan, boolean parallel) {
+    this.hTable = hTable;
+    this.scan = scan;
+    this.parallel = parallel;
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+    splits = ((WdCombinedTableSplit) split).getSplits();
+    if (parallel && splits.size() > 1) {
+      Scan[] scans = new Scan[splits.size()];
+      for (int i = 0; i < scans.length; i++) {
+        scans[i] = createScan(splits.get(i));
+      }
+      ResultScanner[] scanners = DistributedScanner.openScanners(hTable, scans);
+      int caching = scan.getCaching() > 0 ? scan.getCaching() : hTable.getScannerCaching();
+      scanner = new UnorderedDistributedScanner(scanners, caching * scanners.length);
+      nextSplit = splits.size();
+      readingInParallel = true;
+    } else {
+      scanner = openNext();
+    }
+  }
+
+  private Scan createScan(TableSplit split) throws IOException {
+    Scan splitScan = new Scan(scan);
+    splitScan.setStartRow(split.getStartRow());
+    splitScan.setStopRow(split.getEndRow());
+    return splitScan;
+  }
+
+  private ResultScanner openNext() throws IOException {
+    if (nextSplit == splits.size()) {
+      return null;
+    }
+    return hTable.getScanner(createScan(splits.get(nextSplit++)));
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    while (scanner != null) {
+      value = scanner.next();
+      if (value != null) {
+        key.set(value.getRow());
+        return true;
+      }
+      scanner.close();
+      scanner = null;
+      scanner = openNext();
+    }
+
+    return false;
+  }
+
+  @Override
+  public ImmutableBytesWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public Result getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() {
+    if (splits == null || splits.isEmpty()) {
+      return 0;
+    }
+    if (readingInParallel) {
+      // progress of parallel reading is not known
+      return scanner == null ? 1 : 0;
+    }
+    int completed = scanner == null ? nextSplit : nextSplit - 1;
+    return (float) completed / splits.size();
+  }
+
+  @Override
+  public void close() {
+    if (scanner != null) {
+      scanner.close();
+      scanner = null;
+    }
+  }
+}
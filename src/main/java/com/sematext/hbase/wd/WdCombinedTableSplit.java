@@ -0,0 +1,112 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+/**
+ * Split which consists of several table splits (buckets' intervals within regions) read by one map task
+ */
+public class WdCombinedTableSplit extends InputSplit implements Writable {
+  private List<TableSplit> splits;
+
+  /**
+   * For reflection, do NOT use it.
+   */
+  public WdCombinedTableSplit() {
+    this.splits = new ArrayList<TableSplit>();
+  }
+
+  public WdCombinedTableSplit(List<TableSplit> splits) {
+    this.splits = splits;
+  }
+
+  public List<TableSplit> getSplits() {
+    return splits;
+  }
+
+  /**
+   * @return number of the combined splits, as size of the table split is not known
+   */
+  @Override
+  public long getLength() {
+    return splits.size();
+  }
+
+  /**
+   * @return locations of the combined splits, the ones holding more of them go first
+   */
+  @Override
+  public String[] getLocations() {
+    return getLocations(splits);
+  }
+
+  /**
+   * @return locations of the given splits, the ones holding more of them go first
+   */
+  static String[] getLocations(List<TableSplit> splits) {
+    final Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (TableSplit split : splits) {
+      Integer count = counts.get(split.getRegionLocation());
+      counts.put(split.getRegionLocation(), count == null ? 1 : count + 1);
+    }
+
+    List<String> locations = new ArrayList<String>(counts.keySet());
+    Collections.sort(locations, new Comparator<String>() {
+      @Override
+      public int compare(String location1, String location2) {
+        return counts.get(location2) - counts.get(location1);
+      }
+    });
+    return locations.toArray(new String[locations.size()]);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(splits.size());
+    for (TableSplit split : splits) {
+      split.write(out);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int count = in.readInt();
+    splits = new ArrayList<TableSplit>(count);
+    for (int i = 0; i < count; i++) {
+      TableSplit split = new TableSplit();
+      split.readFields(in);
+      splits.add(split);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "WdCombinedTableSplit" + splits;
+  }
+}
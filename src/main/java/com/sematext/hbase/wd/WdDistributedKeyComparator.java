@@ -0,0 +1,64 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Sorts original keys (map output keys) in the order of their distributed keys, so that reducers get records in the
+ * order they are stored in the table. See {@link WdHFileOutputFormat#configureIncrementalLoad}.
+ */
+public class WdDistributedKeyComparator extends WritableComparator implements Configurable {
+  // ImmutableBytesWritable is serialized as int length followed by bytes
+  private static final int LENGTH_SIZE = Bytes.SIZEOF_INT;
+
+  private Configuration conf;
+  private AbstractRowKeyDistributor keyDistributor;
+
+  public WdDistributedKeyComparator() {
+    super(ImmutableBytesWritable.class);
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.keyDistributor = WdTableInputFormat.createRowKeyDistributor(conf);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+    return keyDistributor.compareDistributedKeys(b1, s1 + LENGTH_SIZE, l1 - LENGTH_SIZE,
+            b2, s2 + LENGTH_SIZE, l2 - LENGTH_SIZE);
+  }
+
+  @Override
+  public int compare(WritableComparable a, WritableComparable b) {
+    ImmutableBytesWritable key1 = (ImmutableBytesWritable) a;
+    ImmutableBytesWritable key2 = (ImmutableBytesWritable) b;
+    return keyDistributor.compareDistributedKeys(key1.get(), key1.getOffset(), key1.getLength(),
+            key2.get(), key2.getOffset(), key2.getLength());
+  }
+}
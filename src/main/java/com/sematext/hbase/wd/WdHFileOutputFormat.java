@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat;
+import org.apache.hadoop.hbase.mapreduce.KeyValueSortReducer;
+import org.apache.hadoop.hbase.mapreduce.PutSortReducer;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Writes HFiles for bulk load from KeyValues with original keys: distributes the keys with the configured row key
+ * distributor. Use {@link #configureIncrementalLoad(Job, HTable, AbstractRowKeyDistributor)} to set up the job, then
+ * load the files with {@link org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles}.
+ */
+public class WdHFileOutputFormat extends HFileOutputFormat {
+  @Override
+  public RecordWriter<ImmutableBytesWritable, KeyValue> getRecordWriter(TaskAttemptContext context)
+          throws IOException, InterruptedException {
+    final RecordWriter<ImmutableBytesWritable, KeyValue> writer = super.getRecordWriter(context);
+    final AbstractRowKeyDistributor keyDistributor =
+            WdTableInputFormat.createRowKeyDistributor(context.getConfiguration());
+
+    return new RecordWriter<ImmutableBytesWritable, KeyValue>() {
+      private byte[] originalRow;
+      private byte[] distributedRow;
+
+      @Override
+      public void write(ImmutableBytesWritable row, KeyValue kv) throws IOException, InterruptedException {
+        if (kv == null) {
+          // signals HFileOutputFormat to roll the files
+          writer.write(row, kv);
+          return;
+        }
+
+        // KeyValues of the same row come one after another, row is distributed once for all of them
+        if (originalRow == null || Bytes.compareTo(originalRow, 0, originalRow.length,
+                kv.getBuffer(), kv.getRowOffset(), kv.getRowLength()) != 0) {
+          originalRow = kv.getRow();
+          distributedRow = keyDistributor.getDistributedKey(originalRow);
+        }
+        writer.write(new ImmutableBytesWritable(distributedRow), DistributedWriteBuffer.withRow(kv, distributedRow));
+      }
+
+      @Override
+      public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+        writer.close(context);
+      }
+    };
+  }
+
+  /**
+   * Configures job to write HFiles for bulk load into the table: map output (and reducers input) keys are original
+   * keys, they are partitioned by the table regions their distributed keys belong to and sorted in distributed keys
+   * order, so that each reducer writes HFiles for one region. Like {@link HFileOutputFormat#configureIncrementalLoad}
+   * sets sorting reducer when map output values are KeyValues or Puts and adds jars of HBase, job's classes and the
+   * distributor to the job.
+   * NOTE: distributed key must be defined by the original key (see
+   * {@link AbstractRowKeyDistributor#isKeyDeterministic()}), i.e. {@link RowKeyDistributorByOneBytePrefix} can't be
+   * used.
+   * @param job job to configure
+   * @param table table to bulk load into
+   * @param keyDistributor row key distributor
+   * @throws IOException when region boundaries can't be fetched
+   */
+  public static void configureIncrementalLoad(Job job, HTable table, AbstractRowKeyDistributor keyDistributor)
+          throws IOException {
+    if (!keyDistributor.isKeyDeterministic()) {
+      throw new IllegalArgumentException("Distributed key should be defined by original key, "
+              + keyDistributor.getClass().getName() + " is not supported");
+    }
+
+    job.setOutputKeyClass(ImmutableBytesWritable.class);
+    job.setOutputValueClass(KeyValue.class);
+    job.setOutputFormatClass(WdHFileOutputFormat.class);
+    if (KeyValue.class.equals(job.getMapOutputValueClass())) {
+      job.setReducerClass(KeyValueSortReducer.class);
+    } else if (Put.class.equals(job.getMapOutputValueClass())) {
+      job.setReducerClass(PutSortReducer.class);
+    }
+
+    byte[][] regionStartKeys = table.getStartKeys();
+    job.setNumReduceTasks(regionStartKeys.length);
+    job.setPartitionerClass(WdHFilePartitioner.class);
+    job.setSortComparatorClass(WdDistributedKeyComparator.class);
+
+    Configuration conf = job.getConfiguration();
+    WdHFilePartitioner.setRegionStartKeys(conf, regionStartKeys);
+    keyDistributor.addInfo(conf);
+
+    TableMapReduceUtil.addDependencyJars(job);
+    // distributor is created by partitioner and comparator, it may come from other jar than the job's classes
+    TableMapReduceUtil.addDependencyJars(conf, keyDistributor.getClass());
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Base64;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Partitions records with original keys by the table regions their distributed keys fall into, so that each reducer
+ * writes HFiles for a single region. See {@link WdHFileOutputFormat#configureIncrementalLoad}.
+ */
+public class WdHFilePartitioner<V> extends Partitioner<ImmutableBytesWritable, V> implements Configurable {
+  /** Start keys of the table regions, Base64-encoded */
+  public static final String REGION_START_KEYS = "hbase.mapreduce.write.wd.region.start.keys";
+
+  private Configuration conf;
+  private AbstractRowKeyDistributor keyDistributor;
+  private byte[][] regionStartKeys;
+
+  /**
+   * Stores region start keys in the configuration.
+   * @param conf configuration to store keys in
+   * @param regionStartKeys start keys of the table regions
+   */
+  public static void setRegionStartKeys(Configuration conf, byte[][] regionStartKeys) {
+    String[] encoded = new String[regionStartKeys.length];
+    for (int i = 0; i < regionStartKeys.length; i++) {
+      encoded[i] = Base64.encodeBytes(regionStartKeys[i]);
+    }
+    conf.setStrings(REGION_START_KEYS, encoded);
+  }
+
+  static byte[][] getRegionStartKeys(Configuration conf) {
+    String[] encoded = conf.getStrings(REGION_START_KEYS);
+    if (encoded == null) {
+      throw new IllegalArgumentException("Region start keys are not set, " + REGION_START_KEYS);
+    }
+    byte[][] regionStartKeys = new byte[encoded.length][];
+    for (int i = 0; i < encoded.length; i++) {
+      regionStartKeys[i] = Base64.decode(encoded[i]);
+    }
+    Arrays.sort(regionStartKeys, Bytes.BYTES_COMPARATOR);
+    return regionStartKeys;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.keyDistributor = WdTableInputFormat.createRowKeyDistributor(conf);
+    this.regionStartKeys = getRegionStartKeys(conf);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public int getPartition(ImmutableBytesWritable originalKey, V value, int numPartitions) {
+    byte[] distributedKey = keyDistributor.getDistributedKey(getBytes(originalKey));
+    int pos = Arrays.binarySearch(regionStartKeys, distributedKey, Bytes.BYTES_COMPARATOR);
+    // region is the one with the greatest start key not greater than the distributed key
+    int region = pos >= 0 ? pos : Math.max(0, -pos - 2);
+    return region % numPartitions;
+  }
+
+  static byte[] getBytes(ImmutableBytesWritable bytes) {
+    if (bytes.getOffset() == 0 && bytes.getLength() == bytes.get().length) {
+      return bytes.get();
+    }
+    return bytes.copyBytes();
+  }
+}
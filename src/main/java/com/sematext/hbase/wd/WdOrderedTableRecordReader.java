@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Reads sub-range of the original keys of {@link WdOrderedTableSplit} from all buckets merging them with
+ * {@link DistributedScanner}, so that rows are ordered by original keys.
+ */
+public class WdOrderedTableRecordReader extends RecordReader<ImmutableBytesWritable, Result> {
+  private final HTable hTable;
+  private final Scan scan;
+  private final AbstractRowKeyDistributor keyDistributor;
+
+  private ResultScanner scanner;
+  private boolean finished = false;
+  private final ImmutableBytesWritable key = new ImmutableBytesWritable();
+  private Result value;
+
+  /**
+   * @param hTable table to read from
+   * @param scan scan to apply to the sub-range
+   * @param keyDistributor distributor used to write the data
+   */
+  public WdOrderedTableRecordReader(HTable hTable, Scan scan, AbstractRowKeyDistributor keyDistributor) {
+    this.hTable = hTable;
+    this.scan = scan;
+    this.keyDistributor = keyDistributor;
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+    WdOrderedTableSplit orderedSplit = (WdOrderedTableSplit) split;
+    Scan subRangeScan = new Scan(scan);
+    subRangeScan.setStartRow(orderedSplit.getStartRow());
+    subRangeScan.setStopRow(orderedSplit.getEndRow());
+    scanner = DistributedScanner.create(hTable, subRangeScan, keyDistributor);
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    if (finished) {
+      return false;
+    }
+    value = scanner.next();
+    if (value == null) {
+      finished = true;
+      return false;
+    }
+    key.set(value.getRow());
+    return true;
+  }
+
+  @Override
+  public ImmutableBytesWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public Result getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() {
+    // position within the original keys sub-range is not known
+    return finished ? 1 : 0;
+  }
+
+  @Override
+  public void close() {
+    if (scanner != null) {
+      scanner.close();
+      scanner = null;
+    }
+  }
+}
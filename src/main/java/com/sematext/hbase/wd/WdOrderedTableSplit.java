@@ -0,0 +1,34 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+
+/**
+ * Split which covers sub-range of the original keys across all buckets. Start and end rows are original keys, region
+ * location is the one holding most of the sub-range's intervals.
+ */
+public class WdOrderedTableSplit extends TableSplit {
+  /**
+   * For reflection, do NOT use it.
+   */
+  public WdOrderedTableSplit() {
+  }
+
+  public WdOrderedTableSplit(byte[] tableName, byte[] originalStartRow, byte[] originalEndRow, String location) {
+    super(tableName, originalStartRow, originalEndRow, location);
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Record reader which hands original keys to the mapper instead of the distributed ones. Key is a view into the
+ * row of the current {@link Result}: no per-row copying of the key takes place.
+ * NOTE: key is only valid until the next row is read, mappers which keep it should copy it.
+ */
+public class WdOriginalKeyRecordReader extends RecordReader<ImmutableBytesWritable, Result> {
+  private final RecordReader<ImmutableBytesWritable, Result> reader;
+  private final AbstractRowKeyDistributor keyDistributor;
+  private final ImmutableBytesWritable key = new ImmutableBytesWritable();
+
+  /**
+   * @param reader reader of rows with distributed keys
+   * @param keyDistributor distributor used to write the data, shared by all rows read by the task
+   */
+  public WdOriginalKeyRecordReader(RecordReader<ImmutableBytesWritable, Result> reader,
+                                   AbstractRowKeyDistributor keyDistributor) {
+    this.reader = reader;
+    this.keyDistributor = keyDistributor;
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+    reader.initialize(split, context);
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    if (!reader.nextKeyValue()) {
+      return false;
+    }
+    // Result caches its row, so this is the same array wrapped reader's key was set to
+    keyDistributor.getOriginalKey(reader.getCurrentValue().getRow(), key);
+    return true;
+  }
+
+  @Override
+  public ImmutableBytesWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public Result getCurrentValue() throws IOException, InterruptedException {
+    return reader.getCurrentValue();
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    return reader.getProgress();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
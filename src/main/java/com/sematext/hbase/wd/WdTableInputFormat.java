@@ -17,13 +17,29 @@ package com.sematext.hbase.wd;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerAddress;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 /**
  * Convert HBase tabular data into a format that is consumable by Map/Reduce with respect to
@@ -35,6 +51,32 @@ public class WdTableInputFormat extends TableInputFormat {
 
   public static final String ROW_KEY_DISTRIBUTOR_CLASS = "hbase.mapreduce.scan.wd.distributor.class";
   public static final String ROW_KEY_DISTRIBUTOR_PARAMS = "hbase.mapreduce.scan.wd.distributor.params";
+  /**
+   * Max number of map tasks: when there are more splits (buckets' intervals within regions) they are combined, splits
+   * on the same region server are grouped together. Not set by default, i.e. split per each bucket's interval within
+   * a region.
+   */
+  public static final String MAX_MAP_TASKS = "hbase.mapreduce.scan.wd.max.map.tasks";
+  /** When set to true combined splits' parts are read in parallel (rows order is not preserved then) */
+  public static final String COMBINED_SPLIT_PARALLEL = "hbase.mapreduce.scan.wd.combined.split.parallel";
+  /**
+   * When set to true each split covers sub-range of the original keys across all buckets and its rows are fed to the
+   * mapper ordered by the original key.
+   */
+  public static final String ORDERED_SPLITS = "hbase.mapreduce.scan.wd.ordered.splits";
+  /** Number of ordered splits to create, defaults to the number of table regions */
+  public static final String ORDERED_SPLITS_COUNT = "hbase.mapreduce.scan.wd.ordered.splits.count";
+  /** When set to true mappers get original keys (views into the rows, see {@link WdOriginalKeyRecordReader}) */
+  public static final String ORIGINAL_KEYS = "hbase.mapreduce.scan.wd.original.keys";
+
+  // Orders splits by location, so that splits on the same region server are combined together
+  private static final Comparator<TableSplit> LOCATION_COMPARATOR = new Comparator<TableSplit>() {
+    @Override
+    public int compare(TableSplit split1, TableSplit split2) {
+      int result = split1.getRegionLocation().compareTo(split2.getRegionLocation());
+      return result != 0 ? result : Bytes.compareTo(split1.getStartRow(), split2.getStartRow());
+    }
+  };
 
   private AbstractRowKeyDistributor rowKeyDistributor;
 
@@ -42,37 +84,241 @@ public class WdTableInputFormat extends TableInputFormat {
   public void setConf(Configuration conf) {
     super.setConf(conf);
 
-    if (conf.get(ROW_KEY_DISTRIBUTOR_CLASS) != null) {
-      String clazz = conf.get(ROW_KEY_DISTRIBUTOR_CLASS);
-      try {
-        rowKeyDistributor = (AbstractRowKeyDistributor) Class.forName(clazz).newInstance();
-        if (conf.get(ROW_KEY_DISTRIBUTOR_PARAMS) != null) {
-          rowKeyDistributor.init(conf.get(ROW_KEY_DISTRIBUTOR_PARAMS));
-        }
-      } catch (Exception e) {
-        throw new RuntimeException("Cannot create row key distributor, " + ROW_KEY_DISTRIBUTOR_CLASS + ": " + clazz, e);
+    rowKeyDistributor = createRowKeyDistributor(conf);
+  }
+
+  /**
+   * Creates row key distributor stored in configuration with {@link AbstractRowKeyDistributor#addInfo(Configuration)}.
+   * @param conf configuration to read distributor class and params from
+   * @return row key distributor or null if none is configured
+   */
+  public static AbstractRowKeyDistributor createRowKeyDistributor(Configuration conf) {
+    String clazz = conf.get(ROW_KEY_DISTRIBUTOR_CLASS);
+    if (clazz == null) {
+      return null;
+    }
+    try {
+      AbstractRowKeyDistributor rowKeyDistributor = (AbstractRowKeyDistributor) Class.forName(clazz).newInstance();
+      if (conf.get(ROW_KEY_DISTRIBUTOR_PARAMS) != null) {
+        rowKeyDistributor.init(conf.get(ROW_KEY_DISTRIBUTOR_PARAMS));
       }
+      return rowKeyDistributor;
+    } catch (Exception e) {
+      throw new RuntimeException("Cannot create row key distributor, " + ROW_KEY_DISTRIBUTOR_CLASS + ": " + clazz, e);
     }
   }
 
+  /**
+   * Creates split per each intersection of bucket's interval with table region. Regions boundaries and locations are
+   * fetched once for all buckets.
+   */
   @Override
   public List<InputSplit> getSplits(JobContext context) throws IOException {
-    List<InputSplit> allSplits = new ArrayList<InputSplit>();
+    HTable table = getHTable();
+    if (table == null) {
+      throw new IOException("No table was provided.");
+    }
+    Map<HRegionInfo, HServerAddress> regions = table.getRegionsInfo();
+    if (regions == null || regions.isEmpty()) {
+      throw new IOException("Expecting at least one region.");
+    }
+
     Scan originalScan = getScan();
+    if (getConf().getBoolean(ORDERED_SPLITS, false)) {
+      return getOrderedSplits(table.getTableName(), originalScan, regions, rowKeyDistributor,
+              getConf().getInt(ORDERED_SPLITS_COUNT, regions.size()));
+    }
+
+    Pair<byte[], byte[]>[] intervals =
+            rowKeyDistributor.getDistributedIntervals(originalScan.getStartRow(), originalScan.getStopRow());
+    List<InputSplit> splits = getSplits(table.getTableName(), intervals, regions);
+
+    int maxMapTasks = getConf().getInt(MAX_MAP_TASKS, 0);
+    if (maxMapTasks > 0 && splits.size() > maxMapTasks) {
+      splits = combine(splits, maxMapTasks);
+    }
 
-    Scan[] scans = rowKeyDistributor.getDistributedScans(originalScan);
+    return splits;
+  }
 
-    for (Scan scan : scans) {
-      // Internally super.getSplits(...) uses scan object stored in private variable,
-      // to re-use the code of super class we switch scan object with scans we
-      setScan(scan);
-      List<InputSplit> splits = super.getSplits(context);
-      allSplits.addAll(splits);
+  /**
+   * Creates reader for the split. Row key distributor is created once (see {@link #setConf(Configuration)}) and is
+   * shared by the readers.
+   */
+  @Override
+  public RecordReader<ImmutableBytesWritable, Result> createRecordReader(InputSplit split, TaskAttemptContext context)
+          throws IOException {
+    RecordReader<ImmutableBytesWritable, Result> reader;
+    if (split instanceof WdOrderedTableSplit) {
+      reader = new WdOrderedTableRecordReader(getHTable(), getScan(), rowKeyDistributor);
+    } else if (split instanceof WdCombinedTableSplit) {
+      reader = new WdCombinedTableRecordReader(getHTable(), getScan(),
+              getConf().getBoolean(COMBINED_SPLIT_PARALLEL, false));
+    } else {
+      reader = super.createRecordReader(split, context);
     }
 
-    // Setting original scan back
-    setScan(originalScan);
+    if (getConf().getBoolean(ORIGINAL_KEYS, false)) {
+      reader = new WdOriginalKeyRecordReader(reader, rowKeyDistributor);
+    }
+    return reader;
+  }
+
+  /**
+   * Creates splits covering sub-ranges of the original keys. Sub-ranges boundaries are sampled from the original parts
+   * of the regions' start keys (HBase splits regions by data size, so they follow data distribution). Regions split
+   * only on buckets boundaries (e.g. pre-split with {@link DistributedTables}) give no samples, then the original keys
+   * range is split evenly, see {@link #getBoundaries(List, byte[], byte[], int)}.
+   */
+  List<InputSplit> getOrderedSplits(byte[] tableName, Scan originalScan, Map<HRegionInfo, HServerAddress> regions,
+                                    AbstractRowKeyDistributor keyDistributor, int count) {
+    List<byte[]> samples = new ArrayList<byte[]>(regions.size());
+    // original keys can't be taken from the regions' start keys when they are not suffixes of the rows
+    if (keyDistributor.hasSuffixOriginalKey()) {
+      for (HRegionInfo region : regions.keySet()) {
+        byte[] startKey = region.getStartKey();
+        int prefixLength = keyDistributor.getPrefixLength(startKey);
+        if (startKey.length > prefixLength) {
+          samples.add(Bytes.tail(startKey, startKey.length - prefixLength));
+        }
+      }
+    }
+
+    byte[] startRow = originalScan.getStartRow();
+    byte[] stopRow = originalScan.getStopRow();
+    List<byte[]> boundaries = getBoundaries(samples, startRow, stopRow, count);
+    boundaries.add(0, startRow);
+    boundaries.add(stopRow);
+
+    List<InputSplit> splits = new ArrayList<InputSplit>(boundaries.size() - 1);
+    for (int i = 0; i < boundaries.size() - 1; i++) {
+      List<InputSplit> parts = getSplits(tableName,
+              keyDistributor.getDistributedIntervals(boundaries.get(i), boundaries.get(i + 1)), regions);
+      if (parts.isEmpty()) {
+        continue;
+      }
+      List<TableSplit> tableSplits = new ArrayList<TableSplit>(parts.size());
+      for (InputSplit part : parts) {
+        tableSplits.add((TableSplit) part);
+      }
+      splits.add(new WdOrderedTableSplit(tableName, boundaries.get(i), boundaries.get(i + 1),
+              WdCombinedTableSplit.getLocations(tableSplits)[0]));
+    }
+
+    return splits;
+  }
+
+  /**
+   * Chooses (up to) count - 1 boundaries which split original keys range [startRow, stopRow) into count sub-ranges.
+   * Boundaries are picked evenly from the samples; when there are not enough samples range is split evenly instead,
+   * unknown range ends are taken as the smallest and the largest keys (so unbounded range is split evenly on the first
+   * byte of the original key).
+   * @return sorted boundaries, without range ends
+   */
+  static List<byte[]> getBoundaries(List<byte[]> samples, byte[] startRow, byte[] stopRow, int count) {
+    TreeSet<byte[]> inRange = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    for (byte[] sample : samples) {
+      if (Bytes.compareTo(sample, startRow) > 0 && (stopRow.length == 0 || Bytes.compareTo(sample, stopRow) < 0)) {
+        inRange.add(sample);
+      }
+    }
+
+    List<byte[]> boundaries = new ArrayList<byte[]>();
+    if (count <= 1) {
+      return boundaries;
+    }
+
+    if (inRange.size() < count - 1) {
+      // any key of startRow length is less than the key of 0xff bytes which is one byte longer
+      byte[] end = stopRow.length > 0 ? stopRow : createFilledKey(startRow.length + 1, (byte) 0xff);
+      byte[][] keys = Bytes.split(startRow, end, count - 1);
+      if (keys != null) {
+        // skipping range ends
+        for (int i = 1; i < keys.length - 1; i++) {
+          boundaries.add(keys[i]);
+        }
+        return boundaries;
+      }
+    }
+
+    List<byte[]> sorted = new ArrayList<byte[]>(inRange);
+    int boundariesCount = Math.min(count - 1, sorted.size());
+    for (int i = 1; i <= boundariesCount; i++) {
+      boundaries.add(sorted.get((int) ((long) sorted.size() * i / (boundariesCount + 1))));
+    }
+
+    return boundaries;
+  }
+
+  private static byte[] createFilledKey(int length, byte value) {
+    byte[] key = new byte[length];
+    Arrays.fill(key, value);
+    return key;
+  }
+
+  /**
+   * Combines splits into the given number of splits of (almost) equal size, grouping splits on the same region
+   * server together.
+   */
+  static List<InputSplit> combine(List<InputSplit> splits, int count) {
+    List<TableSplit> sorted = new ArrayList<TableSplit>(splits.size());
+    for (InputSplit split : splits) {
+      sorted.add((TableSplit) split);
+    }
+    Collections.sort(sorted, LOCATION_COMPARATOR);
+
+    List<InputSplit> combined = new ArrayList<InputSplit>(count);
+    int from = 0;
+    for (int i = 0; i < count; i++) {
+      int to = (int) ((long) sorted.size() * (i + 1) / count);
+      combined.add(new WdCombinedTableSplit(new ArrayList<TableSplit>(sorted.subList(from, to))));
+      from = to;
+    }
+
+    return combined;
+  }
+
+  List<InputSplit> getSplits(byte[] tableName, Pair<byte[], byte[]>[] intervals,
+                             Map<HRegionInfo, HServerAddress> regions) {
+    TreeMap<byte[], HRegionInfo> regionsByStartKey = new TreeMap<byte[], HRegionInfo>(Bytes.BYTES_COMPARATOR);
+    for (HRegionInfo region : regions.keySet()) {
+      regionsByStartKey.put(region.getStartKey(), region);
+    }
+
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+    for (Pair<byte[], byte[]> interval : intervals) {
+      byte[] startRow = interval.getFirst();
+      byte[] stopRow = interval.getSecond();
+      if (stopRow.length > 0 && Bytes.compareTo(startRow, stopRow) >= 0) {
+        continue;
+      }
+
+      // region which contains start row and all the following ones up to the stop row
+      byte[] firstRegionStartKey = regionsByStartKey.floorKey(startRow);
+      for (HRegionInfo region : regionsByStartKey.tailMap(firstRegionStartKey, true).values()) {
+        byte[] regionStartKey = region.getStartKey();
+        byte[] regionEndKey = region.getEndKey();
+        if (stopRow.length > 0 && Bytes.compareTo(regionStartKey, stopRow) >= 0) {
+          break;
+        }
+        if (!includeRegionInSplit(regionStartKey, regionEndKey)) {
+          continue;
+        }
+
+        byte[] splitStart = Bytes.compareTo(regionStartKey, startRow) >= 0 ? regionStartKey : startRow;
+        byte[] splitStop = regionEndKey.length > 0 && (stopRow.length == 0 || Bytes.compareTo(regionEndKey, stopRow) <= 0) ?
+                regionEndKey : stopRow;
+        splits.add(new TableSplit(tableName, splitStart, splitStop, getHostname(regions.get(region))));
+      }
+    }
+
+    return splits;
+  }
 
-    return allSplits;
+  /**
+   * @return host of the region server, empty for the region which isn't assigned (e.g. is in transition)
+   */
+  private static String getHostname(HServerAddress address) {
+    return address == null || address.getInetSocketAddress() == null ? "" : address.getHostname();
   }
 }
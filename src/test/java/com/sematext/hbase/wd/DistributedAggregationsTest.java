@@ -0,0 +1,158 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests combining of the buckets' partial aggregates, uses in-memory scanners instead of a cluster
+ */
+public class DistributedAggregationsTest {
+  @Test
+  public void testAggregate() throws IOException {
+    final RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 8);
+    List<byte[]> keys = new ArrayList<byte[]>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add(Bytes.toBytes(i));
+    }
+    ResultScanner[] scanners =
+            InMemoryResultScanner.createScanners(InMemoryResultScanner.distribute(keyDistributor, keys));
+    final AtomicInteger opened = new AtomicInteger();
+    final AtomicInteger maxOpened = new AtomicInteger();
+    List<Callable<ResultScanner>> openers = new ArrayList<Callable<ResultScanner>>();
+    for (final ResultScanner scanner : scanners) {
+      openers.add(new Callable<ResultScanner>() {
+        @Override
+        public ResultScanner call() {
+          int current = opened.incrementAndGet();
+          synchronized (maxOpened) {
+            maxOpened.set(Math.max(maxOpened.get(), current));
+          }
+          return new InMemoryResultScanner(new ArrayList<Result>()) {
+            @Override
+            public Result next() throws IOException {
+              return scanner.next();
+            }
+
+            @Override
+            public void close() {
+              opened.decrementAndGet();
+              scanner.close();
+            }
+          };
+        }
+      });
+    }
+    openers.add(new Callable<ResultScanner>() {
+      @Override
+      public ResultScanner call() {
+        // bucket with no scan
+        return null;
+      }
+    });
+
+    // fewer threads than buckets
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    // sums original keys
+    long sum = DistributedAggregations.aggregate(openers, new DistributedAggregations.Aggregator<Long>() {
+      @Override
+      public Long createPartial() {
+        return 0L;
+      }
+
+      @Override
+      public Long add(Long partial, Result row) {
+        return partial + Bytes.toInt(keyDistributor.getOriginalKey(row.getRow()));
+      }
+
+      @Override
+      public Long merge(Long partial1, Long partial2) {
+        return partial1 + partial2;
+      }
+    }, executor);
+    executor.shutdown();
+
+    Assert.assertEquals(999 * 1000 / 2, sum);
+    for (ResultScanner scanner : scanners) {
+      Assert.assertTrue(((InMemoryResultScanner) scanner).isClosed());
+    }
+    // scanners of the buckets waiting for a thread are not held open
+    Assert.assertTrue(maxOpened.get() <= 3);
+    Assert.assertEquals(0, opened.get());
+  }
+
+  @Test
+  public void testFailure() {
+    List<Result> rows = new ArrayList<Result>();
+    rows.add(InMemoryResultScanner.createResult(Bytes.toBytes(1)));
+    ResultScanner failing = new InMemoryResultScanner(rows) {
+      @Override
+      public Result next() throws IOException {
+        throw new IOException("bucket failed");
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      DistributedAggregations.aggregate(toOpeners(new InMemoryResultScanner(rows), failing), new DistributedAggregations.Aggregator<Integer>() {
+        @Override
+        public Integer createPartial() {
+          return 0;
+        }
+
+        @Override
+        public Integer add(Integer partial, Result row) {
+          return partial + 1;
+        }
+
+        @Override
+        public Integer merge(Integer partial1, Integer partial2) {
+          return partial1 + partial2;
+        }
+      }, executor);
+      Assert.fail("Failure of a bucket should fail aggregation");
+    } catch (IOException e) {
+      Assert.assertEquals("bucket failed", e.getMessage());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static List<Callable<ResultScanner>> toOpeners(ResultScanner... scanners) {
+    List<Callable<ResultScanner>> openers = new ArrayList<Callable<ResultScanner>>();
+    for (final ResultScanner scanner : scanners) {
+      openers.add(new Callable<ResultScanner>() {
+        @Override
+        public ResultScanner call() {
+          return scanner;
+        }
+      });
+    }
+    return openers;
+  }
+}
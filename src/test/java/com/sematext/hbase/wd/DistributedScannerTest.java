@@ -0,0 +1,380 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests merging of the buckets' rows on the client side, uses in-memory scanners instead of a cluster
+ */
+public class DistributedScannerTest {
+  @Test
+  public void testMergeOrder() throws IOException {
+    testMergeOrder(new RowKeyDistributorByOneBytePrefix((byte) 1), 100);
+    testMergeOrder(new RowKeyDistributorByOneBytePrefix((byte) 12), 1000);
+    testMergeOrder(new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(256)), 5000);
+    // some of the buckets stay empty
+    testMergeOrder(new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(64)), 20);
+    testMergeOrder(new RowKeyDistributorByOneBytePrefix((byte) 32), 0);
+  }
+
+  @Test
+  public void testMergeOrderOfTransformedKeys() throws IOException {
+    // original key is not a suffix of the distributed key, merge must compare keys returned by getOriginalKey
+    OriginalKeyViewTest.TerminatedKeyDistributor keyDistributor = new OriginalKeyViewTest.TerminatedKeyDistributor(8);
+    List<byte[]> distributedKeys = new ArrayList<byte[]>();
+    for (byte[] originalKey : createKeys(1000)) {
+      distributedKeys.add(keyDistributor.getDistributedKey(originalKey));
+    }
+    Collections.sort(distributedKeys, Bytes.BYTES_RAWCOMPARATOR);
+    List<List<Result>> buckets = new ArrayList<List<Result>>();
+    for (int i = 0; i < 8; i++) {
+      buckets.add(new ArrayList<Result>());
+    }
+    for (byte[] distributedKey : distributedKeys) {
+      buckets.get(distributedKey[0]).add(InMemoryResultScanner.createResult(distributedKey));
+    }
+    DistributedScanner distributedScanner =
+            new DistributedScanner(keyDistributor, InMemoryResultScanner.createScanners(buckets), 10);
+
+    int count = 0;
+    byte[] previousOriginalKey = null;
+    for (Result current : distributedScanner) {
+      byte[] currentOriginalKey = keyDistributor.getOriginalKey(current.getRow());
+      if (previousOriginalKey != null) {
+        Assert.assertTrue(Bytes.compareTo(currentOriginalKey, previousOriginalKey) >= 0);
+      }
+      previousOriginalKey = currentOriginalKey;
+      count++;
+    }
+    distributedScanner.close();
+
+    Assert.assertEquals(1000, count);
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 8);
+    ResultScanner[] scanners =
+            InMemoryResultScanner.createScanners(InMemoryResultScanner.distribute(keyDistributor, createKeys(100)));
+    DistributedScanner distributedScanner = new DistributedScanner(keyDistributor, scanners);
+    Assert.assertEquals(10, distributedScanner.next(10).length);
+    distributedScanner.close();
+    for (ResultScanner scanner : scanners) {
+      Assert.assertTrue(((InMemoryResultScanner) scanner).isClosed());
+    }
+  }
+
+  @Test
+  public void testPrefetchingClosed() throws IOException {
+    List<Result> rows = InMemoryResultScanner.distribute(new RowKeyDistributorByOneBytePrefix((byte) 1),
+            createKeys(100)).get(0);
+    InMemoryResultScanner scanner = new InMemoryResultScanner(rows);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    // small queue to make the worker wait for the consumer
+    PrefetchingResultScanner prefetchingScanner = new PrefetchingResultScanner(scanner, 5, executor);
+    Assert.assertEquals(10, prefetchingScanner.next(10).length);
+    prefetchingScanner.close();
+    executor.shutdown();
+
+    Assert.assertTrue(scanner.isClosed());
+    Assert.assertNull(prefetchingScanner.next());
+    Assert.assertEquals(0, prefetchingScanner.next(10).length);
+  }
+
+  @Test
+  public void testRefillSize() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 4);
+    ResultScanner[] scanners =
+            InMemoryResultScanner.createScanners(InMemoryResultScanner.distribute(keyDistributor, createKeys(400)));
+    DistributedScanner distributedScanner = new DistributedScanner(keyDistributor, scanners, 30);
+    int count = 0;
+    for (Result current : distributedScanner) {
+      count++;
+    }
+    distributedScanner.close();
+
+    Assert.assertEquals(400, count);
+    for (ResultScanner scanner : scanners) {
+      // 100 rows in each bucket are fetched in 4 batches, last call finds bucket exhausted
+      Assert.assertEquals(5, ((InMemoryResultScanner) scanner).getFetchesCount());
+    }
+  }
+
+  @Test
+  public void testMaxBufferedBytes() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 8);
+    List<byte[]> keys = createKeys(2000);
+    ResultScanner[] scanners = InMemoryResultScanner.createScanners(InMemoryResultScanner.distribute(keyDistributor, keys));
+    // all rows are of the same size, allowing 5 rows per bucket
+    long rowSize = InMemoryResultScanner.createResult(keyDistributor.getDistributedKey(keys.get(0))).raw()[0].getLength();
+    DistributedScanner distributedScanner = new DistributedScanner(keyDistributor, scanners, 100, 8 * 5 * rowSize);
+
+    int count = 0;
+    byte[] previousOriginalKey = null;
+    for (Result current : distributedScanner) {
+      byte[] currentOriginalKey = keyDistributor.getOriginalKey(current.getRow());
+      if (previousOriginalKey != null) {
+        Assert.assertTrue(Bytes.compareTo(currentOriginalKey, previousOriginalKey) >= 0);
+      }
+      previousOriginalKey = currentOriginalKey;
+      count++;
+    }
+    distributedScanner.close();
+
+    Assert.assertEquals(2000, count);
+    for (ResultScanner scanner : scanners) {
+      Assert.assertEquals(5, ((InMemoryResultScanner) scanner).getMaxFetchSize());
+    }
+  }
+
+  @Test
+  public void testBulkNext() throws IOException {
+    AbstractRowKeyDistributor keyDistributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(16));
+    List<List<Result>> buckets = InMemoryResultScanner.distribute(keyDistributor, createKeys(1000));
+    DistributedScanner singleRowScanner =
+            new DistributedScanner(keyDistributor, InMemoryResultScanner.createScanners(buckets), 1);
+    DistributedScanner bulkScanner =
+            new DistributedScanner(keyDistributor, InMemoryResultScanner.createScanners(buckets), 13);
+
+    int count = 0;
+    Result[] results;
+    while ((results = bulkScanner.next(7)).length > 0) {
+      Assert.assertTrue(results.length <= 7);
+      for (Result result : results) {
+        Assert.assertArrayEquals(singleRowScanner.next().getRow(), result.getRow());
+        count++;
+      }
+    }
+    Assert.assertNull(singleRowScanner.next());
+    Assert.assertEquals(1000, count);
+    singleRowScanner.close();
+    bulkScanner.close();
+  }
+
+  @Test
+  public void testUnordered() throws IOException {
+    RowKeyDistributorByHashPrefix keyDistributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(32));
+    List<byte[]> keys = createKeys(5000);
+    ResultScanner[] scanners = InMemoryResultScanner.createScanners(InMemoryResultScanner.distribute(keyDistributor, keys));
+    // small queue to make workers wait for the consumer
+    UnorderedDistributedScanner unorderedScanner = new UnorderedDistributedScanner(scanners, 5);
+
+    Set<byte[]> originalKeys = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    for (Result current : unorderedScanner) {
+      Assert.assertTrue(originalKeys.add(keyDistributor.getOriginalKey(current.getRow())));
+    }
+    unorderedScanner.close();
+
+    Assert.assertEquals(new HashSet<Integer>(toInts(keys)), new HashSet<Integer>(toInts(originalKeys)));
+    for (ResultScanner scanner : scanners) {
+      Assert.assertTrue(((InMemoryResultScanner) scanner).isClosed());
+    }
+  }
+
+  @Test
+  public void testUnorderedClosedEarly() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 16);
+    ResultScanner[] scanners =
+            InMemoryResultScanner.createScanners(InMemoryResultScanner.distribute(keyDistributor, createKeys(1000)));
+    UnorderedDistributedScanner unorderedScanner = new UnorderedDistributedScanner(scanners, 5);
+    Assert.assertEquals(10, unorderedScanner.next(10).length);
+    unorderedScanner.close();
+    for (ResultScanner scanner : scanners) {
+      Assert.assertTrue(((InMemoryResultScanner) scanner).isClosed());
+    }
+    Assert.assertNull(unorderedScanner.next());
+    Assert.assertEquals(0, unorderedScanner.next(10).length);
+  }
+
+  @Test
+  public void testUnorderedFailure() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 4);
+    List<List<Result>> buckets = InMemoryResultScanner.distribute(keyDistributor, createKeys(100));
+    ResultScanner[] scanners = InMemoryResultScanner.createScanners(buckets);
+    scanners[2] = new InMemoryResultScanner(buckets.get(2)) {
+      @Override
+      public Result next() throws IOException {
+        throw new IOException("region server failed");
+      }
+    };
+    UnorderedDistributedScanner unorderedScanner = new UnorderedDistributedScanner(scanners, 5);
+    for (int i = 0; i < 2; i++) {
+      try {
+        while (unorderedScanner.next() != null) {
+          // draining the rest of the buckets
+        }
+        Assert.fail("Failure of the bucket should be reported, not the end of the scan");
+      } catch (IOException e) {
+        Assert.assertEquals("region server failed", e.getMessage());
+      }
+    }
+    unorderedScanner.close();
+  }
+
+  @Test
+  public void testLimit() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 8);
+    List<List<Result>> buckets = InMemoryResultScanner.distribute(keyDistributor, createKeys(1000));
+    DistributedScanner unlimited =
+            new DistributedScanner(keyDistributor, InMemoryResultScanner.createScanners(buckets), 100);
+    Result[] expected = unlimited.next(25);
+    unlimited.close();
+
+    ResultScanner[] scanners = InMemoryResultScanner.createScanners(buckets);
+    DistributedScanner distributedScanner = new DistributedScanner(keyDistributor, scanners, 100, 0, 25);
+    Result[] results = distributedScanner.next(24);
+    for (ResultScanner scanner : scanners) {
+      Assert.assertFalse(((InMemoryResultScanner) scanner).isClosed());
+      // buckets don't fetch more than the limit
+      Assert.assertTrue(((InMemoryResultScanner) scanner).getMaxFetchSize() <= 25);
+    }
+
+    Assert.assertNotNull(distributedScanner.next());
+    // scanners are closed as soon as the limit is reached
+    for (ResultScanner scanner : scanners) {
+      Assert.assertTrue(((InMemoryResultScanner) scanner).isClosed());
+    }
+    Assert.assertNull(distributedScanner.next());
+    distributedScanner.close();
+
+    for (int i = 0; i < results.length; i++) {
+      Assert.assertArrayEquals(expected[i].getRow(), results[i].getRow());
+    }
+  }
+
+  @Test
+  public void testCursor() throws IOException {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 8);
+    // same original keys in many buckets
+    List<byte[]> keys = createKeys(500);
+    keys.addAll(keys);
+    List<List<Result>> buckets = InMemoryResultScanner.distribute(keyDistributor, keys);
+
+    List<Result> rows = new ArrayList<Result>();
+    int totalFetched = 0;
+    ScanCursor cursor = null;
+    do {
+      // scanner per page
+      ResultScanner[] scanners = new ResultScanner[buckets.size()];
+      Scan[] scans = new Scan[buckets.size()];
+      for (int i = 0; i < scans.length; i++) {
+        scans[i] = new Scan();
+      }
+      scans = cursor == null ? scans : cursor.resume(scans);
+      for (int i = 0; i < scans.length; i++) {
+        if (scans[i] != null) {
+          List<Result> bucketRows = new ArrayList<Result>();
+          for (Result row : buckets.get(i)) {
+            if (Bytes.compareTo(row.getRow(), scans[i].getStartRow()) >= 0) {
+              bucketRows.add(row);
+            }
+          }
+          scanners[i] = new InMemoryResultScanner(bucketRows);
+        }
+      }
+
+      // buckets start with fetching their share of the page, as set by create()
+      DistributedScanner distributedScanner = new DistributedScanner(keyDistributor, scanners,
+              DistributedScanner.getLimitShare(scans, 37), 0, 37);
+      if (cursor != null) {
+        distributedScanner.setStartCursor(cursor);
+      }
+      int pageSize = 0;
+      for (Result row : distributedScanner) {
+        rows.add(row);
+        pageSize++;
+      }
+      int fetched = 0;
+      for (ResultScanner scanner : scanners) {
+        if (scanner != null) {
+          fetched += ((InMemoryResultScanner) scanner).getFetchedRowsCount();
+        }
+      }
+      // buckets don't fetch the whole page each
+      Assert.assertTrue("Fetched " + fetched + " rows for the page of " + pageSize, fetched <= 3 * 37);
+      totalFetched += fetched;
+      cursor = ScanCursor.fromBytes(distributedScanner.getCursor().toBytes());
+      distributedScanner.close();
+    } while (!cursor.isExhausted());
+
+    Assert.assertEquals(1000, rows.size());
+    Assert.assertTrue("Fetched " + totalFetched + " rows", totalFetched <= 2 * 1000);
+    Set<String> distinctRows = new HashSet<String>();
+    for (int i = 0; i < rows.size(); i++) {
+      distinctRows.add(Bytes.toStringBinary(rows.get(i).getRow()));
+      if (i > 0) {
+        Assert.assertTrue(keyDistributor.compareOriginalKeys(rows.get(i - 1).getRow(), rows.get(i).getRow()) <= 0);
+      }
+    }
+    Assert.assertEquals(1000, distinctRows.size());
+  }
+
+  private static List<Integer> toInts(Iterable<byte[]> keys) {
+    List<Integer> ints = new ArrayList<Integer>();
+    for (byte[] key : keys) {
+      ints.add(Bytes.toInt(key));
+    }
+    return ints;
+  }
+
+  private static List<byte[]> createKeys(int count) {
+    Random random = new Random();
+    List<byte[]> keys = new ArrayList<byte[]>();
+    for (int i = 0; i < count; i++) {
+      keys.add(Bytes.toBytes(random.nextInt()));
+    }
+    return keys;
+  }
+
+  private static void testMergeOrder(AbstractRowKeyDistributor keyDistributor, int rowsCount) throws IOException {
+    List<List<Result>> buckets = InMemoryResultScanner.distribute(keyDistributor, createKeys(rowsCount));
+    DistributedScanner distributedScanner =
+            new DistributedScanner(keyDistributor, InMemoryResultScanner.createScanners(buckets));
+
+    int count = 0;
+    byte[] previousOriginalKey = null;
+    for (Result current : distributedScanner) {
+      byte[] currentOriginalKey = keyDistributor.getOriginalKey(current.getRow());
+      if (previousOriginalKey != null) {
+        Assert.assertTrue(Bytes.compareTo(currentOriginalKey, previousOriginalKey) >= 0);
+      }
+      previousOriginalKey = currentOriginalKey;
+      count++;
+    }
+    distributedScanner.close();
+
+    Assert.assertEquals(rowsCount, count);
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DistributedTablesTest {
+  @Test
+  public void testFewerRegionsThanBuckets() {
+    byte[][] splitKeys = DistributedTables.getSplitKeys(new RowKeyDistributorByOneBytePrefix((byte) 32), 4);
+    Assert.assertEquals(3, splitKeys.length);
+    Assert.assertArrayEquals(new byte[] {8}, splitKeys[0]);
+    Assert.assertArrayEquals(new byte[] {16}, splitKeys[1]);
+    Assert.assertArrayEquals(new byte[] {24}, splitKeys[2]);
+
+    splitKeys = DistributedTables.getSplitKeys(new RowKeyDistributorByOneBytePrefix((byte) 32), 32);
+    Assert.assertEquals(31, splitKeys.length);
+    for (int i = 0; i < splitKeys.length; i++) {
+      Assert.assertArrayEquals(new byte[] {(byte) (i + 1)}, splitKeys[i]);
+    }
+
+    Assert.assertEquals(0, DistributedTables.getSplitKeys(new RowKeyDistributorByOneBytePrefix((byte) 32), 1).length);
+  }
+
+  @Test
+  public void testSubBucketSplits() {
+    byte[][] splitKeys = DistributedTables.getSplitKeys(new RowKeyDistributorByOneBytePrefix((byte) 2), 5);
+    // first bucket is split into 3 regions, second into 2
+    Assert.assertEquals(4, splitKeys.length);
+    Assert.assertArrayEquals(new byte[] {0, (byte) 85}, splitKeys[0]);
+    Assert.assertArrayEquals(new byte[] {0, (byte) 170}, splitKeys[1]);
+    Assert.assertArrayEquals(new byte[] {1}, splitKeys[2]);
+    Assert.assertArrayEquals(new byte[] {1, (byte) 128}, splitKeys[3]);
+
+    // single bucket with empty prefix
+    splitKeys = DistributedTables.getSplitKeys(
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix_IdentityHashTest.IdentityHash()), 4);
+    Assert.assertEquals(3, splitKeys.length);
+    Assert.assertArrayEquals(new byte[] {(byte) 64}, splitKeys[0]);
+  }
+
+  @Test
+  public void testTwoBytesPrefixes() {
+    AbstractRowKeyDistributor keyDistributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.MurmurHash(1000));
+    byte[][] splitKeys = DistributedTables.getSplitKeys(keyDistributor, 10);
+    Assert.assertEquals(9, splitKeys.length);
+    for (int i = 0; i < splitKeys.length; i++) {
+      Assert.assertEquals((i + 1) * 100, Bytes.toShort(splitKeys[i]));
+    }
+  }
+
+  @Test
+  public void testOriginalKeySplits() {
+    byte[][] splitKeys = DistributedTables.getSplitKeys(new RowKeyDistributorByOneBytePrefix((byte) 3),
+            new byte[][] {Bytes.toBytes("m")});
+    Assert.assertEquals(5, splitKeys.length);
+    Assert.assertArrayEquals(Bytes.add(new byte[] {0}, Bytes.toBytes("m")), splitKeys[0]);
+    Assert.assertArrayEquals(new byte[] {1}, splitKeys[1]);
+    Assert.assertArrayEquals(Bytes.add(new byte[] {1}, Bytes.toBytes("m")), splitKeys[2]);
+    Assert.assertArrayEquals(new byte[] {2}, splitKeys[3]);
+    Assert.assertArrayEquals(Bytes.add(new byte[] {2}, Bytes.toBytes("m")), splitKeys[4]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyRegions() {
+    DistributedTables.getSplitKeys(new RowKeyDistributorByOneBytePrefix((byte) 2), 513);
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Scanner over the rows held in memory, used to test and measure client-side scanning logic without a cluster
+ */
+public class InMemoryResultScanner implements ResultScanner {
+  private static final byte[] CF = Bytes.toBytes("colfam");
+  private static final byte[] QUAL = Bytes.toBytes("qual");
+
+  private final List<Result> results;
+  private int pos = 0;
+  private boolean closed = false;
+  private int fetchesCount = 0;
+  private int maxFetchSize = 0;
+  private int fetchedRowsCount = 0;
+
+  public InMemoryResultScanner(List<Result> results) {
+    this.results = results;
+  }
+
+  public static Result createResult(byte[] row) {
+    return new Result(new KeyValue[] {new KeyValue(row, CF, QUAL, row)});
+  }
+
+  /**
+   * Creates scanners over rows with given original keys distributed by the given distributor, one scanner per bucket.
+   * @param keyDistributor distributor which puts keys into buckets by prefixing them
+   * @param originalKeys original keys of the rows
+   * @return scanners, ordered as distributed scans of the unbounded scan
+   */
+  public static List<List<Result>> distribute(AbstractRowKeyDistributor keyDistributor, List<byte[]> originalKeys) {
+    byte[][] prefixes = keyDistributor.getAllDistributedKeys(new byte[0]);
+    Arrays.sort(prefixes, Bytes.BYTES_RAWCOMPARATOR);
+    List<List<Result>> buckets = new ArrayList<List<Result>>();
+    for (int i = 0; i < prefixes.length; i++) {
+      buckets.add(new ArrayList<Result>());
+    }
+
+    List<byte[]> distributedKeys = new ArrayList<byte[]>();
+    for (byte[] originalKey : originalKeys) {
+      distributedKeys.add(keyDistributor.getDistributedKey(originalKey));
+    }
+    Collections.sort(distributedKeys, Bytes.BYTES_RAWCOMPARATOR);
+    for (byte[] distributedKey : distributedKeys) {
+      for (int i = prefixes.length - 1; i >= 0; i--) {
+        if (Bytes.startsWith(distributedKey, prefixes[i])) {
+          buckets.get(i).add(createResult(distributedKey));
+          break;
+        }
+      }
+    }
+
+    return buckets;
+  }
+
+  public static ResultScanner[] createScanners(List<List<Result>> buckets) {
+    ResultScanner[] scanners = new ResultScanner[buckets.size()];
+    for (int i = 0; i < scanners.length; i++) {
+      scanners[i] = new InMemoryResultScanner(buckets.get(i));
+    }
+    return scanners;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /** @return number of next() and next(int) calls */
+  public int getFetchesCount() {
+    return fetchesCount;
+  }
+
+  /** @return max number of rows requested at once */
+  public int getMaxFetchSize() {
+    return maxFetchSize;
+  }
+
+  /** @return number of rows returned */
+  public int getFetchedRowsCount() {
+    return fetchedRowsCount;
+  }
+
+  @Override
+  public Result next() throws IOException {
+    fetchesCount++;
+    maxFetchSize = Math.max(maxFetchSize, 1);
+    if (pos == results.size()) {
+      return null;
+    }
+    fetchedRowsCount++;
+    return results.get(pos++);
+  }
+
+  @Override
+  public Result[] next(int nbRows) throws IOException {
+    fetchesCount++;
+    maxFetchSize = Math.max(maxFetchSize, nbRows);
+    int count = Math.min(nbRows, results.size() - pos);
+    Result[] next = results.subList(pos, pos + count).toArray(new Result[count]);
+    pos += count;
+    fetchedRowsCount += count;
+    return next;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  @Override
+  public Iterator<Result> iterator() {
+    return new ResultScannerIterator(this);
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MurmurHashTest {
+  @Test
+  public void testPrefixes() {
+    testPrefixes(1, 1);
+    testPrefixes(10, 1);
+    testPrefixes(256, 1);
+    testPrefixes(257, 2);
+    testPrefixes(1000, 2);
+    testPrefixes(65536, 2);
+  }
+
+  private void testPrefixes(int maxBuckets, int prefixLength) {
+    RowKeyDistributorByHashPrefix.MurmurHash hasher = new RowKeyDistributorByHashPrefix.MurmurHash(maxBuckets);
+    byte[][] allPrefixes = hasher.getAllPossiblePrefixes();
+    Assert.assertEquals(maxBuckets, allPrefixes.length);
+    for (int i = 0; i < allPrefixes.length; i++) {
+      Assert.assertEquals(prefixLength, allPrefixes[i].length);
+      if (i > 0) {
+        Assert.assertTrue("Prefixes should be sorted and unique", Bytes.compareTo(allPrefixes[i - 1], allPrefixes[i]) < 0);
+      }
+    }
+
+    Random r = new Random();
+    for (int i = 0; i < 1000; i++) {
+      byte[] originalKey = new byte[r.nextInt(20)];
+      r.nextBytes(originalKey);
+      byte[] hash = hasher.getHashPrefix(originalKey);
+      Assert.assertEquals(prefixLength, hasher.getPrefixLength(Bytes.add(hash, originalKey)));
+      Assert.assertTrue("Hashed prefix wasn't found in all possible prefixes, val: " + Arrays.toString(hash),
+              Arrays.binarySearch(allPrefixes, hash, Bytes.BYTES_COMPARATOR) >= 0);
+    }
+
+    Assert.assertArrayEquals(
+            hasher.getHashPrefix(new byte[] {123, 12, 11}), hasher.getHashPrefix(new byte[] {123, 12, 11}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyBuckets() {
+    new RowKeyDistributorByHashPrefix.MurmurHash(65537);
+  }
+
+  @Test
+  public void testParamsRoundTrip() {
+    RowKeyDistributorByHashPrefix distributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.MurmurHash(1000));
+    RowKeyDistributorByHashPrefix restored = new RowKeyDistributorByHashPrefix();
+    restored.init(distributor.getParamsToStore());
+
+    Assert.assertEquals(1000, restored.getAllDistributedKeys(new byte[0]).length);
+    for (int i = 0; i < 1000; i++) {
+      byte[] original = Bytes.toBytes("key" + i);
+      byte[] distributed = distributor.getDistributedKey(original);
+      Assert.assertArrayEquals(distributed, restored.getDistributedKey(original));
+      Assert.assertArrayEquals(original, restored.getOriginalKey(distributed));
+    }
+  }
+
+  @Test
+  public void testCompareDistributedKeys() {
+    RowKeyDistributorByHashPrefix distributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.MurmurHash(1000));
+    for (int i = 0; i < 1000; i++) {
+      byte[] key1 = Bytes.toBytes("key" + i);
+      byte[] key2 = Bytes.toBytes("key" + (i * 7 % 1000));
+      // keys as views into larger arrays
+      byte[] buffer1 = Bytes.add(new byte[] {1}, key1);
+      byte[] buffer2 = Bytes.add(new byte[] {2, 2}, key2);
+      Assert.assertEquals(Integer.signum(Bytes.compareTo(distributor.getDistributedKey(key1),
+              distributor.getDistributedKey(key2))),
+              Integer.signum(distributor.compareDistributedKeys(buffer1, 1, key1.length, buffer2, 2, key2.length)));
+    }
+  }
+
+  /**
+   * Verifies that sequential and patterned keys are spread evenly over buckets.
+   */
+  @Test
+  public void testDistributionQuality() {
+    int[] bucketsNumbers = new int[] {16, 256, 1000};
+    for (int maxBuckets : bucketsNumbers) {
+      int keysCount = maxBuckets * 1000;
+
+      byte[][] sequential = new byte[keysCount][];
+      byte[][] sameSuffix = new byte[keysCount][];
+      byte[][] stepped = new byte[keysCount][];
+      for (int i = 0; i < keysCount; i++) {
+        sequential[i] = Bytes.toBytes((long) i);
+        // e.g. time-based key with a constant "source id" suffix
+        sameSuffix[i] = Bytes.add(Bytes.toBytes(1300000000000L + i * 1000L), Bytes.toBytes("source-1"));
+        // keys differing only in bits which are multiple of buckets number
+        stepped[i] = Bytes.toBytes(i * maxBuckets);
+      }
+
+      RowKeyDistributorByHashPrefix.MurmurHash murmur = new RowKeyDistributorByHashPrefix.MurmurHash(maxBuckets);
+      assertSkew(murmur, maxBuckets, sequential, "sequential");
+      assertSkew(murmur, maxBuckets, sameSuffix, "same suffix");
+      assertSkew(murmur, maxBuckets, stepped, "stepped");
+    }
+  }
+
+  private static void assertSkew(RowKeyDistributorByHashPrefix.Hasher hasher, int maxBuckets, byte[][] keys,
+                                 String keysKind) {
+    double skew = skew(hasher, maxBuckets, keys);
+    Assert.assertTrue("Skew of " + keysKind + " keys over " + maxBuckets + " buckets is " + skew, skew < 0.2);
+  }
+
+  /**
+   * @return max relative deviation of bucket size from the expected (mean) one
+   */
+  private static double skew(RowKeyDistributorByHashPrefix.Hasher hasher, int maxBuckets, byte[][] keys) {
+    byte[][] allPrefixes = hasher.getAllPossiblePrefixes();
+    int[] counts = new int[maxBuckets];
+    for (byte[] key : keys) {
+      counts[Arrays.binarySearch(allPrefixes, hasher.getHashPrefix(key), Bytes.BYTES_COMPARATOR)]++;
+    }
+
+    double expected = (double) keys.length / maxBuckets;
+    double maxDeviation = 0;
+    for (int count : counts) {
+      maxDeviation = Math.max(maxDeviation, Math.abs(count - expected) / expected);
+    }
+    return maxDeviation;
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests access to the original key part of the distributed keys without copying
+ */
+public class OriginalKeyViewTest {
+  @Test
+  public void testOriginalKeyView() {
+    testOriginalKeyView(new RowKeyDistributorByOneBytePrefix((byte) 12));
+    testOriginalKeyView(new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(15)));
+    testOriginalKeyView(new RowKeyDistributorByHashPrefix(
+            new RowKeyDistributorByHashPrefix_MultiBytesPrefixHashTest.MultiBytesPrefixHash()));
+    testOriginalKeyView(new RowKeyDistributorByHashPrefix(
+            new RowKeyDistributorByHashPrefix_IdentityHashTest.IdentityHash()));
+  }
+
+  @Test
+  public void testTransformedOriginalKey() {
+    AbstractRowKeyDistributor keyDistributor = new TerminatedKeyDistributor(8);
+    Random random = new Random();
+    ImmutableBytesWritable view = new ImmutableBytesWritable();
+    for (int i = 0; i < 1000; i++) {
+      byte[] originalKey1 = new byte[1 + random.nextInt(10)];
+      random.nextBytes(originalKey1);
+      byte[] originalKey2 = new byte[1 + random.nextInt(10)];
+      random.nextBytes(originalKey2);
+      byte[] distributedKey1 = keyDistributor.getDistributedKey(originalKey1);
+      byte[] distributedKey2 = keyDistributor.getDistributedKey(originalKey2);
+
+      keyDistributor.getOriginalKey(distributedKey1, view);
+      Assert.assertArrayEquals(originalKey1, view.copyBytes());
+      int expected = Integer.signum(Bytes.compareTo(originalKey1, originalKey2));
+      Assert.assertEquals(expected, Integer.signum(keyDistributor.compareOriginalKeys(distributedKey1, distributedKey2)));
+    }
+  }
+
+  private static void testOriginalKeyView(AbstractRowKeyDistributor keyDistributor) {
+    Random random = new Random();
+    ImmutableBytesWritable view1 = new ImmutableBytesWritable();
+    ImmutableBytesWritable view2 = new ImmutableBytesWritable();
+    for (int i = 0; i < 1000; i++) {
+      byte[] originalKey1 = new byte[1 + random.nextInt(10)];
+      random.nextBytes(originalKey1);
+      byte[] originalKey2 = new byte[1 + random.nextInt(10)];
+      random.nextBytes(originalKey2);
+      byte[] distributedKey1 = keyDistributor.getDistributedKey(originalKey1);
+      byte[] distributedKey2 = keyDistributor.getDistributedKey(originalKey2);
+
+      Assert.assertEquals(distributedKey1.length - originalKey1.length, keyDistributor.getPrefixLength(distributedKey1));
+      keyDistributor.getOriginalKey(distributedKey1, view1);
+      keyDistributor.getOriginalKey(distributedKey2, view2);
+      Assert.assertSame(distributedKey1, view1.get());
+      Assert.assertArrayEquals(originalKey1, view1.copyBytes());
+
+      int expected = Integer.signum(Bytes.compareTo(originalKey1, originalKey2));
+      Assert.assertEquals(expected, Integer.signum(keyDistributor.compareOriginalKeys(distributedKey1, distributedKey2)));
+      Assert.assertEquals(expected,
+              Integer.signum(keyDistributor.getOriginalKeyComparator().compare(distributedKey1, distributedKey2)));
+      Assert.assertEquals(expected, Integer.signum(view1.compareTo(view2)));
+    }
+  }
+
+  /**
+   * Distributor which adds a terminating byte after the original key, so the original key is not a suffix of the
+   * distributed key
+   */
+  public static class TerminatedKeyDistributor extends AbstractRowKeyDistributor {
+    private int bucketsCount;
+
+    public TerminatedKeyDistributor(int bucketsCount) {
+      this.bucketsCount = bucketsCount;
+    }
+
+    @Override
+    public byte[] getDistributedKey(byte[] originalKey) {
+      byte prefix = (byte) (originalKey.length == 0 ? 0 : (originalKey[originalKey.length - 1] & 0xff) % bucketsCount);
+      return Bytes.add(new byte[] {prefix}, originalKey, new byte[] {0});
+    }
+
+    @Override
+    public byte[] getOriginalKey(byte[] adjustedKey) {
+      return Arrays.copyOfRange(adjustedKey, 1, adjustedKey.length - 1);
+    }
+
+    @Override
+    public byte[][] getAllDistributedKeys(byte[] originalKey) {
+      byte[][] keys = new byte[bucketsCount][];
+      for (int i = 0; i < bucketsCount; i++) {
+        keys[i] = Bytes.add(new byte[] {(byte) i}, originalKey);
+      }
+      return keys;
+    }
+
+    @Override
+    public String getParamsToStore() {
+      return String.valueOf(bucketsCount);
+    }
+
+    @Override
+    public void init(String storedParams) {
+      bucketsCount = Integer.parseInt(storedParams);
+    }
+  }
+}
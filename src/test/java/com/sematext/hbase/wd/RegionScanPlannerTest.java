@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RegionScanPlannerTest {
+  private static final byte[] CF = Bytes.toBytes("colfam");
+  private static final byte[] QUAL = Bytes.toBytes("qual");
+
+  // 16 regions: "", 0x10, 0x20, ..., 0xf0
+  private static byte[][] createRegionStartKeys() {
+    byte[][] regionStartKeys = new byte[16][];
+    regionStartKeys[0] = HConstants.EMPTY_START_ROW;
+    for (int i = 1; i < regionStartKeys.length; i++) {
+      regionStartKeys[i] = new byte[] {(byte) (i * 16)};
+    }
+    return regionStartKeys;
+  }
+
+  @Test
+  public void testFullScan() throws IOException {
+    AbstractRowKeyDistributor keyDistributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(256));
+    Scan[] scans = RegionScanPlanner.getScans(new Scan(),
+            keyDistributor.getDistributedIntervals(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW),
+            createRegionStartKeys());
+
+    // buckets' intervals are adjacent, so one scan per region without filtering
+    Assert.assertEquals(16, scans.length);
+    Assert.assertArrayEquals(new byte[] {0}, scans[0].getStartRow());
+    for (int i = 0; i < scans.length; i++) {
+      Assert.assertNull(scans[i].getFilter());
+      if (i > 0) {
+        Assert.assertArrayEquals(new byte[] {(byte) (i * 16)}, scans[i].getStartRow());
+      }
+      Assert.assertArrayEquals(i < 15 ? new byte[] {(byte) ((i + 1) * 16)} : HConstants.EMPTY_END_ROW,
+              scans[i].getStopRow());
+    }
+  }
+
+  @Test
+  public void testRangeScan() throws IOException {
+    AbstractRowKeyDistributor keyDistributor =
+            new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(256));
+    Scan original = new Scan(Bytes.toBytes(100L), Bytes.toBytes(200L));
+    original.setFilter(new PrefixFilter(new byte[0]));
+    Scan[] scans = RegionScanPlanner.getScans(original,
+            keyDistributor.getDistributedIntervals(original.getStartRow(), original.getStopRow()),
+            createRegionStartKeys());
+
+    Assert.assertEquals(16, scans.length);
+    for (int i = 0; i < scans.length; i++) {
+      MultiRangeFilter filter = (MultiRangeFilter) scans[i].getFilter();
+      Assert.assertEquals(16, filter.getStartKeys().length);
+      Assert.assertSame(original.getFilter(), filter.getFilter());
+      Assert.assertArrayEquals(filter.getStartKeys()[0], scans[i].getStartRow());
+      Assert.assertArrayEquals(filter.getStopKeys()[15], scans[i].getStopRow());
+      for (int k = 0; k < 16; k++) {
+        Assert.assertArrayEquals(Bytes.add(new byte[] {(byte) (i * 16 + k)}, Bytes.toBytes(100L)),
+                filter.getStartKeys()[k]);
+        Assert.assertArrayEquals(Bytes.add(new byte[] {(byte) (i * 16 + k)}, Bytes.toBytes(200L)),
+                filter.getStopKeys()[k]);
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyIntervalsDropped() throws IOException {
+    AbstractRowKeyDistributor keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 32);
+    byte[] key = Bytes.toBytes(100L);
+    Scan[] scans = RegionScanPlanner.getScans(new Scan(key, key),
+            keyDistributor.getDistributedIntervals(key, key), createRegionStartKeys());
+    Assert.assertEquals(0, scans.length);
+  }
+
+  @Test
+  public void testIntervalSpanningRegions() throws IOException {
+    AbstractRowKeyDistributor keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 2);
+    byte[][] regionStartKeys = new byte[][] {HConstants.EMPTY_START_ROW, new byte[] {0, 35}, new byte[] {1}};
+    Scan[] scans = RegionScanPlanner.getScans(new Scan(new byte[] {30}, new byte[] {40}),
+            keyDistributor.getDistributedIntervals(new byte[] {30}, new byte[] {40}), regionStartKeys);
+
+    // interval of bucket 0 is split between first two regions
+    Assert.assertEquals(3, scans.length);
+    Assert.assertArrayEquals(new byte[] {0, 30}, scans[0].getStartRow());
+    Assert.assertArrayEquals(new byte[] {0, 35}, scans[0].getStopRow());
+    Assert.assertArrayEquals(new byte[] {0, 35}, scans[1].getStartRow());
+    Assert.assertArrayEquals(new byte[] {0, 40}, scans[1].getStopRow());
+    Assert.assertArrayEquals(new byte[] {1, 30}, scans[2].getStartRow());
+    Assert.assertArrayEquals(new byte[] {1, 40}, scans[2].getStopRow());
+  }
+
+  @Test
+  public void testFilter() throws IOException {
+    MultiRangeFilter filter = new MultiRangeFilter(new byte[][] {new byte[] {10}, new byte[] {30}},
+            new byte[][] {new byte[] {20}, new byte[] {40}}, null);
+
+    filter = serializeDeserialize(filter);
+
+    Assert.assertFalse(filter.filterRowKey(new byte[] {5}, 0, 1));
+    KeyValue kv = new KeyValue(new byte[] {5}, CF, QUAL, QUAL);
+    Assert.assertEquals(Filter.ReturnCode.SEEK_NEXT_USING_HINT, filter.filterKeyValue(kv));
+    Assert.assertArrayEquals(new byte[] {10}, filter.getNextKeyHint(kv).getRow());
+
+    Assert.assertFalse(filter.filterRowKey(new byte[] {15}, 0, 1));
+    Assert.assertEquals(Filter.ReturnCode.INCLUDE, filter.filterKeyValue(new KeyValue(new byte[] {15}, CF, QUAL, QUAL)));
+    Assert.assertFalse(filter.filterRow());
+
+    Assert.assertFalse(filter.filterRowKey(new byte[] {20}, 0, 1));
+    kv = new KeyValue(new byte[] {20}, CF, QUAL, QUAL);
+    Assert.assertEquals(Filter.ReturnCode.SEEK_NEXT_USING_HINT, filter.filterKeyValue(kv));
+    Assert.assertArrayEquals(new byte[] {30}, filter.getNextKeyHint(kv).getRow());
+
+    Assert.assertFalse(filter.filterRowKey(new byte[] {39, 1}, 0, 2));
+    Assert.assertFalse(filter.filterAllRemaining());
+
+    Assert.assertTrue(filter.filterRowKey(new byte[] {40}, 0, 1));
+    Assert.assertTrue(filter.filterAllRemaining());
+  }
+
+  @Test
+  public void testWrappedFilter() throws IOException {
+    MultiRangeFilter filter = new MultiRangeFilter(new byte[][] {new byte[] {10}}, new byte[][] {new byte[] {20}},
+            new PrefixFilter(new byte[] {15}));
+    filter = serializeDeserialize(filter);
+    Assert.assertTrue(filter.getFilter() instanceof PrefixFilter);
+
+    Assert.assertFalse(filter.filterRowKey(new byte[] {15, 1}, 0, 2));
+    Assert.assertTrue(filter.filterRowKey(new byte[] {16}, 0, 1));
+  }
+
+  private static MultiRangeFilter serializeDeserialize(MultiRangeFilter filter) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    filter.write(new DataOutputStream(bytes));
+    MultiRangeFilter deserialized = new MultiRangeFilter();
+    deserialized.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    return deserialized;
+  }
+}
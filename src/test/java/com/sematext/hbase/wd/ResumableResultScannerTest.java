@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.NotServingRegionException;
+import org.apache.hadoop.hbase.UnknownScannerException;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests reopening of the failed scanners, uses in-memory scanners instead of a cluster
+ */
+public class ResumableResultScannerTest {
+  private static final List<Result> ROWS = new ArrayList<Result>();
+  static {
+    for (int i = 0; i < 100; i++) {
+      ROWS.add(InMemoryResultScanner.createResult(Bytes.toBytes(i)));
+    }
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    // fails after 30 rows, reopened scanner fails after 20 more rows
+    TestScanner scanner = new TestScanner(new FailingScanner(ROWS, 30, new UnknownScannerException("expired")), 3, 20);
+
+    List<Result> results = new ArrayList<Result>();
+    Result[] batch;
+    while ((batch = scanner.next(7)).length > 0) {
+      for (Result result : batch) {
+        results.add(result);
+      }
+    }
+    scanner.close();
+
+    Assert.assertEquals(ROWS.size(), results.size());
+    for (int i = 0; i < results.size(); i++) {
+      Assert.assertEquals(i, Bytes.toInt(results.get(i).getRow()));
+    }
+    Assert.assertEquals(2, scanner.openedScanners);
+  }
+
+  @Test
+  public void testNotRetryable() {
+    TestScanner scanner = new TestScanner(new FailingScanner(ROWS, 10, new DoNotRetryIOException("bad scan")), 3);
+    assertFails(scanner, "bad scan", 10);
+    Assert.assertEquals(0, scanner.openedScanners);
+
+    // errors which are not known to be transient
+    scanner = new TestScanner(new FailingScanner(ROWS, 10, new IOException("table not found")), 3);
+    assertFails(scanner, "table not found", 10);
+    Assert.assertEquals(0, scanner.openedScanners);
+  }
+
+  @Test
+  public void testRetriesExhausted() {
+    // every reopened scanner fails right away
+    TestScanner scanner = new TestScanner(new FailingScanner(ROWS, 10, new NotServingRegionException("region moved")), 3, 0, 0, 0);
+    assertFails(scanner, "region moved", 10);
+    Assert.assertEquals(3, scanner.openedScanners);
+  }
+
+  @Test
+  public void testRetryable() {
+    Assert.assertTrue(ResumableResultScanner.isRetryable(new UnknownScannerException()));
+    Assert.assertTrue(ResumableResultScanner.isRetryable(new NotServingRegionException()));
+    Assert.assertTrue(ResumableResultScanner.isRetryable(new java.net.SocketTimeoutException()));
+    Assert.assertTrue(ResumableResultScanner.isRetryable(new IOException(new java.net.ConnectException())));
+    Assert.assertFalse(ResumableResultScanner.isRetryable(new IOException()));
+    Assert.assertFalse(ResumableResultScanner.isRetryable(new DoNotRetryIOException()));
+    Assert.assertFalse(ResumableResultScanner.isRetryable(new java.io.InterruptedIOException()));
+  }
+
+  private static void assertFails(ResultScanner scanner, String message, int rowsBeforeFailure) {
+    int rows = 0;
+    try {
+      while (scanner.next() != null) {
+        rows++;
+      }
+      Assert.fail("Scanner should have failed");
+    } catch (IOException e) {
+      Assert.assertEquals(message, e.getMessage());
+    }
+    Assert.assertEquals(rowsBeforeFailure, rows);
+  }
+
+  /**
+   * Reopens scanners over the rows starting with the resumed scan's start row, which fail (in the same way as the
+   * initial one) after the given numbers of rows
+   */
+  private static class TestScanner extends ResumableResultScanner {
+    private final FailingScanner initial;
+    private final int[] rowsBeforeFailure;
+    private int openedScanners = 0;
+
+    TestScanner(FailingScanner initial, int retries, int... rowsBeforeFailure) {
+      super(null, new Scan(), initial, retries, 0);
+      this.initial = initial;
+      this.rowsBeforeFailure = rowsBeforeFailure;
+    }
+
+    @Override
+    ResultScanner openScanner(Scan scan) {
+      Assert.assertTrue(initial.isClosed());
+      List<Result> rows = new ArrayList<Result>();
+      for (Result row : ROWS) {
+        if (Bytes.compareTo(row.getRow(), scan.getStartRow()) >= 0) {
+          rows.add(row);
+        }
+      }
+      int failAfter = openedScanners < rowsBeforeFailure.length ? rowsBeforeFailure[openedScanners] : Integer.MAX_VALUE;
+      openedScanners++;
+      return new FailingScanner(rows, failAfter, initial.failure);
+    }
+  }
+
+  private static class FailingScanner extends InMemoryResultScanner {
+    private final IOException failure;
+    private int rowsLeft;
+
+    FailingScanner(List<Result> rows, int rowsBeforeFailure, IOException failure) {
+      super(rows);
+      this.rowsLeft = rowsBeforeFailure;
+      this.failure = failure;
+    }
+
+    @Override
+    public Result next() throws IOException {
+      if (rowsLeft-- <= 0) {
+        throw failure;
+      }
+      return super.next();
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+      if (rowsLeft <= 0) {
+        throw failure;
+      }
+      Result[] results = super.next(Math.min(nbRows, rowsLeft));
+      rowsLeft -= results.length;
+      return results;
+    }
+  }
+}
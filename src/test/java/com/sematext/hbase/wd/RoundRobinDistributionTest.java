@@ -0,0 +1,94 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Verifies {@link RowKeyDistributorByOneBytePrefix} keeps buckets balanced when shared between threads
+ */
+public class RoundRobinDistributionTest {
+  @Test
+  public void testSingleThread() {
+    RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 5);
+    for (int i = 0; i < 23; i++) {
+      Assert.assertEquals(i % 5, keyDistributor.getDistributedKey(Bytes.toBytes(i))[0]);
+    }
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    testConcurrentWriters((byte) 12, 8, 100000);
+    testConcurrentWriters((byte) 3, 16, 10001);
+    testConcurrentWriters((byte) 127, 4, 100000);
+  }
+
+  private void testConcurrentWriters(final byte bucketsCount, int threadsCount, final int keysPerThread)
+          throws Exception {
+    final RowKeyDistributorByOneBytePrefix keyDistributor = new RowKeyDistributorByOneBytePrefix(bucketsCount);
+    final CyclicBarrier start = new CyclicBarrier(threadsCount);
+    final int[][] countsPerThread = new int[threadsCount][bucketsCount];
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < threadsCount; t++) {
+      final int[] counts = countsPerThread[t];
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < keysPerThread; i++) {
+              byte[] distributed = keyDistributor.getDistributedKey(Bytes.toBytes(i));
+              Assert.assertEquals(i, Bytes.toInt(keyDistributor.getOriginalKey(distributed)));
+              counts[distributed[0]]++;
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertNull(failure.get());
+
+    long total = 0;
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    for (int b = 0; b < bucketsCount; b++) {
+      int count = 0;
+      for (int[] counts : countsPerThread) {
+        count += counts[b];
+      }
+      total += count;
+      min = Math.min(min, count);
+      max = Math.max(max, count);
+    }
+
+    Assert.assertEquals((long) threadsCount * keysPerThread, total);
+    Assert.assertTrue("Buckets are unbalanced, min: " + min + ", max: " + max, max - min <= threadsCount);
+  }
+}
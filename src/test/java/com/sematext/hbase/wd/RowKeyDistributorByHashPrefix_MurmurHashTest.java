@@ -0,0 +1,8 @@
+package com.sematext.hbase.wd;
+
+public class RowKeyDistributorByHashPrefix_MurmurHashTest extends RowKeyDistributorTestBase {
+  public RowKeyDistributorByHashPrefix_MurmurHashTest() {
+    // more than 256 buckets to exercise two bytes prefixes
+    super(new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.MurmurHash(300)));
+  }
+}
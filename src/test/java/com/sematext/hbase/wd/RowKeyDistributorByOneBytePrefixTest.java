@@ -15,6 +15,10 @@
  */
 package com.sematext.hbase.wd;
 
+import java.io.IOException;
+
+import org.junit.Test;
+
 /**
  * @author Alex Baranau
  */
@@ -22,4 +26,11 @@ public class RowKeyDistributorByOneBytePrefixTest extends RowKeyDistributorTestB
   public RowKeyDistributorByOneBytePrefixTest() {
     super(new RowKeyDistributorByOneBytePrefix((byte) 12));
   }
+
+  @Override
+  @Test(expected = IllegalArgumentException.class)
+  public void testMultiGet() throws IOException {
+    // distributed key can't be computed from the original key with this distributor
+    super.testMultiGet();
+  }
 }
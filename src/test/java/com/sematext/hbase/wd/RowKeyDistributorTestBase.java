@@ -16,9 +16,14 @@
 package com.sematext.hbase.wd;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
@@ -87,6 +92,117 @@ public abstract class RowKeyDistributorTestBase {
     Assert.assertArrayEquals(value, result.getValue(CF, QUAL));
   }
 
+  /** Testing batched get by original keys. */
+  @Test
+  public void testMultiGet() throws IOException {
+    // making sure records are read in several batches
+    hTable.getConfiguration().setInt(DistributedGets.BATCH_SIZE, 7);
+    List<byte[]> keys = new ArrayList<byte[]>();
+    for (int i = 0; i < 50; i++) {
+      byte[] key = Bytes.toBytes("key" + i);
+      keys.add(key);
+      if (i % 5 != 0) {
+        hTable.put(new Put(keyDistributor.getDistributedKey(key)).add(CF, QUAL, Bytes.toBytes(i)));
+      }
+    }
+
+    Map<byte[], Result> results = DistributedGets.get(hTable, keys, keyDistributor);
+    Assert.assertEquals(40, results.size());
+    for (int i = 0; i < 50; i++) {
+      Result result = results.get(keys.get(i));
+      if (i % 5 != 0) {
+        Assert.assertArrayEquals(Bytes.toBytes(i), result.getValue(CF, QUAL));
+      } else {
+        Assert.assertNull(result);
+      }
+    }
+  }
+
+  /** Testing get of the records which may be in any bucket. */
+  @Test
+  public void testFanOutGet() throws IOException {
+    byte[] key1 = new byte[] {123, 124, 122};
+    byte[] key2 = new byte[] {123, 124, 123};
+    byte[] missingKey = new byte[] {1, 2, 3};
+    hTable.put(new Put(keyDistributor.getDistributedKey(key1)).add(CF, QUAL, Bytes.toBytes("value1")));
+    hTable.put(new Put(keyDistributor.getDistributedKey(key2)).add(CF, QUAL, Bytes.toBytes("value2")));
+
+    Result result = DistributedGets.getFirst(hTable, new Get(key1), keyDistributor);
+    Assert.assertArrayEquals(key1, keyDistributor.getOriginalKey(result.getRow()));
+    Assert.assertArrayEquals(Bytes.toBytes("value1"), result.getValue(CF, QUAL));
+    Assert.assertEquals(1, DistributedGets.getAll(hTable, new Get(key2), keyDistributor).length);
+    Assert.assertNull(DistributedGets.getFirst(hTable, new Get(missingKey), keyDistributor));
+
+    List<Get> gets = new ArrayList<Get>();
+    gets.add(new Get(key1));
+    gets.add(new Get(key2));
+    gets.add(new Get(missingKey));
+    Map<byte[], List<Result>> results = DistributedGets.getAll(hTable, gets, keyDistributor);
+    Assert.assertEquals(2, results.size());
+    Assert.assertArrayEquals(Bytes.toBytes("value2"), results.get(key2).get(0).getValue(CF, QUAL));
+  }
+
+  /** Testing writing with the buffer which flushes buckets in parallel. */
+  @Test
+  public void testWriteBuffer() throws IOException {
+    // making sure puts are flushed several times and writers wait for flushes
+    hTable.getConfiguration().setLong(DistributedWriteBuffer.FLUSH_SIZE, 4 * 1024);
+    hTable.getConfiguration().setLong(DistributedWriteBuffer.MAX_BUFFERED_SIZE, 16 * 1024);
+    long origKeyPrefix = System.currentTimeMillis();
+    DistributedWriteBuffer writeBuffer = new DistributedWriteBuffer(hTable, keyDistributor);
+    for (int i = 0; i < 500; i++) {
+      writeBuffer.put(new Put(Bytes.toBytes(origKeyPrefix + i)).add(CF, QUAL, Bytes.toBytes(i)));
+    }
+    writeBuffer.close();
+
+    ResultScanner distributedScanner = DistributedScanner.create(hTable, new Scan(), keyDistributor);
+    int count = 0;
+    for (Result current : distributedScanner) {
+      Assert.assertEquals(origKeyPrefix + count, Bytes.toLong(keyDistributor.getOriginalKey(current.getRow())));
+      Assert.assertEquals(count, Bytes.toInt(current.getValue(CF, QUAL)));
+      count++;
+    }
+    distributedScanner.close();
+    Assert.assertEquals(500, count);
+  }
+
+  /** Testing that puts of the failed flushes are kept. */
+  @Test
+  public void testWriteBufferFailure() throws IOException {
+    hTable.getConfiguration().setInt("hbase.client.retries.number", 1);
+    long origKeyPrefix = System.currentTimeMillis();
+    DistributedWriteBuffer writeBuffer = new DistributedWriteBuffer(hTable, keyDistributor);
+    for (int i = 0; i < 10; i++) {
+      writeBuffer.put(new Put(Bytes.toBytes(origKeyPrefix + i)).add(CF, QUAL, Bytes.toBytes(i)));
+    }
+    byte[] failingKey = Bytes.toBytes(origKeyPrefix + 10);
+    writeBuffer.put(new Put(failingKey).add(Bytes.toBytes("nonexistent"), QUAL, Bytes.toBytes(10)));
+    try {
+      writeBuffer.flush();
+      Assert.fail("Put into nonexistent family should fail");
+    } catch (IOException e) {
+      // expected
+    }
+
+    List<Put> failedPuts = writeBuffer.getFailedPuts();
+    Assert.assertFalse(failedPuts.isEmpty());
+    boolean found = false;
+    for (Put put : failedPuts) {
+      found |= Bytes.equals(failingKey, keyDistributor.getOriginalKey(put.getRow()));
+    }
+    Assert.assertTrue(found);
+
+    // retried puts fail again and are kept again
+    writeBuffer.retryFailedPuts();
+    try {
+      writeBuffer.close();
+      Assert.fail("Put into nonexistent family should fail");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(failedPuts.size(), writeBuffer.getFailedPuts().size());
+  }
+
   /** Test scan with start and stop key. */
   @Test
   public void testSimpleScanBounded() throws IOException {
@@ -107,6 +223,236 @@ public abstract class RowKeyDistributorTestBase {
     testSimpleScanInternal(origKeyPrefix, new Scan(), 500, 500, 0, 999);
   }
 
+  /** Test scan with buckets being prefetched in parallel. */
+  @Test
+  public void testSimpleScanPrefetching() throws IOException {
+    hTable.getConfiguration().setBoolean(DistributedScanner.PREFETCH, true);
+    // small queue to make workers wait for the consumer
+    hTable.getConfiguration().setInt(DistributedScanner.PREFETCH_QUEUE_SIZE, 3);
+    long origKeyPrefix = System.currentTimeMillis();
+    testSimpleScanInternal(origKeyPrefix, new Scan(), 500, 500, 0, 999);
+  }
+
+  /** Test scan with limited client-side buffering. */
+  @Test
+  public void testSimpleScanMemoryBounded() throws IOException {
+    hTable.getConfiguration().setInt(DistributedScanner.MAX_BUFFERED_ROWS, 20);
+    hTable.getConfiguration().setLong(DistributedScanner.MAX_BUFFERED_BYTES, 4 * 1024);
+    long origKeyPrefix = System.currentTimeMillis();
+    Scan scan = new Scan();
+    scan.setCaching(1000);
+    testSimpleScanInternal(origKeyPrefix, scan, 500, 500, 0, 999);
+  }
+
+  /** Test scan over the table pre-split on buckets boundaries. */
+  @Test
+  public void testSimpleScanPreSplitTable() throws IOException {
+    HTableDescriptor desc = new HTableDescriptor(Bytes.toBytes("pre_split_table"));
+    desc.addFamily(new HColumnDescriptor(CF));
+    DistributedTables.createTable(testingUtility.getHBaseAdmin(), desc, keyDistributor, 6);
+    hTable = new HTable(testingUtility.getConfiguration(), desc.getName());
+    Assert.assertEquals(6, hTable.getStartKeys().length);
+
+    long origKeyPrefix = System.currentTimeMillis();
+    testSimpleScanInternal(origKeyPrefix, new Scan(), 500, 500, 0, 999);
+  }
+
+  /** Test scan which doesn't preserve the order of original keys. */
+  @Test
+  public void testUnorderedScanBounded() throws IOException {
+    testUnorderedScanBoundedInternal();
+  }
+
+  /** Test unordered scan with buckets' intervals served by one scanner per region. */
+  @Test
+  public void testUnorderedScanCoalesced() throws IOException {
+    hTable.getConfiguration().setBoolean(DistributedScanner.COALESCE_BY_REGION, true);
+    testUnorderedScanBoundedInternal();
+  }
+
+  private void testUnorderedScanBoundedInternal() throws IOException {
+    long origKeyPrefix = System.currentTimeMillis();
+
+    int seekIntervalMinValue = 100;
+    int seekIntervalMaxValue = 899;
+    byte[] startKey = Bytes.toBytes(origKeyPrefix + seekIntervalMinValue);
+    byte[] stopKey = Bytes.toBytes(origKeyPrefix + seekIntervalMaxValue + 1);
+    int valuesCountInSeekInterval =
+            writeTestData(origKeyPrefix, 500, 500, seekIntervalMinValue, seekIntervalMaxValue);
+
+    ResultScanner unorderedScanner = DistributedScanner.createUnordered(hTable, new Scan(startKey, stopKey), keyDistributor);
+    int countMatched = 0;
+    for (Result current : unorderedScanner) {
+      countMatched++;
+      int currentValue = Bytes.toInt(current.getValue(CF, QUAL));
+      Assert.assertTrue(currentValue >= seekIntervalMinValue);
+      Assert.assertTrue(currentValue <= seekIntervalMaxValue);
+    }
+    unorderedScanner.close();
+
+    Assert.assertEquals(valuesCountInSeekInterval, countMatched);
+  }
+
+  /** Test scan returning limited number of rows. */
+  @Test
+  public void testSimpleScanLimit() throws IOException {
+    long origKeyPrefix = System.currentTimeMillis();
+    writeTestData(origKeyPrefix, 500, 500, 0, 999);
+    Scan scan = new Scan(Bytes.toBytes(origKeyPrefix + 300), Bytes.toBytes(origKeyPrefix + 1000));
+
+    ResultScanner distributedScanner = DistributedScanner.create(hTable, scan, keyDistributor, 50);
+    int count = 0;
+    for (Result result : distributedScanner) {
+      // odd values up to 499 and even values from 500 were written, so the first 50 ones from 300 are 301, 303, ...
+      Assert.assertEquals(301 + 2 * count, Bytes.toInt(result.getValue(CF, QUAL)));
+      count++;
+    }
+    distributedScanner.close();
+    Assert.assertEquals(50, count);
+  }
+
+  /** Test paging through the scan with cursors. */
+  @Test
+  public void testSimpleScanCursor() throws IOException {
+    long origKeyPrefix = System.currentTimeMillis();
+    int seekIntervalMinValue = 100;
+    int seekIntervalMaxValue = 899;
+    int valuesCountInSeekInterval = writeTestData(origKeyPrefix, 500, 500, seekIntervalMinValue, seekIntervalMaxValue);
+    Scan scan = new Scan(Bytes.toBytes(origKeyPrefix + seekIntervalMinValue),
+            Bytes.toBytes(origKeyPrefix + seekIntervalMaxValue + 1));
+
+    int count = 0;
+    int previousValue = Integer.MIN_VALUE;
+    byte[] cursor = null;
+    do {
+      // no bucket fetches more rows than fit into the page
+      DistributedScanner page = DistributedScanner.create(hTable, scan, keyDistributor,
+              cursor == null ? null : ScanCursor.fromBytes(cursor), 30);
+      for (Result result : page) {
+        int value = Bytes.toInt(result.getValue(CF, QUAL));
+        Assert.assertTrue(value > previousValue);
+        previousValue = value;
+        count++;
+      }
+      cursor = page.getCursor().toBytes();
+      page.close();
+    } while (!ScanCursor.fromBytes(cursor).isExhausted());
+
+    Assert.assertEquals(valuesCountInSeekInterval, count);
+  }
+
+  /** Test parallel aggregations over the range of original keys. */
+  @Test
+  public void testAggregations() throws IOException {
+    long origKeyPrefix = System.currentTimeMillis();
+    for (int i = 0; i < 500; i++) {
+      byte[] key = Bytes.toBytes(origKeyPrefix + i);
+      hTable.put(new Put(keyDistributor.getDistributedKey(key)).add(CF, QUAL, Bytes.toBytes((long) i)));
+    }
+
+    // values 100..399
+    Scan scan = new Scan(Bytes.toBytes(origKeyPrefix + 100), Bytes.toBytes(origKeyPrefix + 400));
+    Assert.assertEquals(300, DistributedAggregations.count(hTable, scan, keyDistributor));
+    Assert.assertEquals((100 + 399) * 300 / 2, DistributedAggregations.sum(hTable, scan, keyDistributor, CF, QUAL));
+    Assert.assertEquals(Long.valueOf(100), DistributedAggregations.min(hTable, scan, keyDistributor, CF, QUAL));
+    Assert.assertEquals(Long.valueOf(399), DistributedAggregations.max(hTable, scan, keyDistributor, CF, QUAL));
+
+    Scan empty = new Scan(Bytes.toBytes(origKeyPrefix + 1000), Bytes.toBytes(origKeyPrefix + 2000));
+    Assert.assertEquals(0, DistributedAggregations.count(hTable, empty, keyDistributor));
+    Assert.assertNull(DistributedAggregations.max(hTable, empty, keyDistributor, CF, QUAL));
+  }
+
+  /** Test parallel deletion of the range of original keys. */
+  @Test
+  public void testDeleteRange() throws IOException {
+    testingUtility.getConfiguration().setInt(DistributedDeletes.BATCH_SIZE, 10);
+    testingUtility.getConfiguration().setLong(DistributedDeletes.MAX_ROWS_PER_SECOND, 10000);
+    testingUtility.getConfiguration().setInt(DistributedDeletes.MAX_THREADS, 2);
+    long origKeyPrefix = System.currentTimeMillis();
+    int seekIntervalMinValue = 100;
+    int seekIntervalMaxValue = 899;
+    int valuesCountInSeekInterval = writeTestData(origKeyPrefix, 500, 500, seekIntervalMinValue, seekIntervalMaxValue);
+
+    Scan scan = new Scan(Bytes.toBytes(origKeyPrefix + seekIntervalMinValue),
+            Bytes.toBytes(origKeyPrefix + seekIntervalMaxValue + 1));
+    final long[] lastProgress = new long[1];
+    long deleted = DistributedDeletes.deleteRange(hTable, scan, keyDistributor,
+            new DistributedDeletes.ProgressListener() {
+              @Override
+              public synchronized void progress(long deletedRows) {
+                lastProgress[0] = Math.max(lastProgress[0], deletedRows);
+              }
+            });
+    Assert.assertEquals(valuesCountInSeekInterval, deleted);
+    Assert.assertEquals(valuesCountInSeekInterval, lastProgress[0]);
+
+    // only rows out of the range are left
+    ResultScanner scanner = DistributedScanner.create(hTable, new Scan(), keyDistributor);
+    int left = 0;
+    for (Result result : scanner) {
+      int value = Bytes.toInt(result.getValue(CF, QUAL));
+      Assert.assertTrue(value < seekIntervalMinValue || value > seekIntervalMaxValue);
+      left++;
+    }
+    scanner.close();
+    Assert.assertEquals(500 - valuesCountInSeekInterval, left);
+  }
+
+  /** Test deletion of the columns selected by the scan. */
+  @Test
+  public void testDeleteColumns() throws IOException {
+    byte[] otherQual = Bytes.toBytes("other");
+    long origKeyPrefix = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      byte[] key = keyDistributor.getDistributedKey(Bytes.toBytes(origKeyPrefix + i));
+      hTable.put(new Put(key).add(CF, QUAL, Bytes.toBytes(i)).add(CF, otherQual, Bytes.toBytes(i)));
+    }
+
+    Scan scan = new Scan(Bytes.toBytes(origKeyPrefix), Bytes.toBytes(origKeyPrefix + 100));
+    scan.addColumn(CF, otherQual);
+    Assert.assertEquals(100, DistributedDeletes.deleteRange(hTable, scan, keyDistributor));
+
+    // other columns of the family are left
+    ResultScanner scanner = DistributedScanner.create(hTable,
+            new Scan(Bytes.toBytes(origKeyPrefix), Bytes.toBytes(origKeyPrefix + 100)), keyDistributor);
+    int left = 0;
+    for (Result result : scanner) {
+      Assert.assertNotNull(result.getValue(CF, QUAL));
+      Assert.assertNull(result.getValue(CF, otherQual));
+      left++;
+    }
+    scanner.close();
+    Assert.assertEquals(100, left);
+  }
+
+  /** Test sharded counters. */
+  @Test
+  public void testCounters() throws IOException {
+    byte[] counter1 = Bytes.toBytes("counter1-" + System.currentTimeMillis());
+    byte[] counter2 = Bytes.toBytes("counter2-" + System.currentTimeMillis());
+    for (int i = 0; i < 100; i++) {
+      DistributedCounters.increment(hTable, counter1, CF, QUAL, i, keyDistributor);
+      DistributedCounters.increment(hTable, counter2, CF, QUAL, 1, keyDistributor);
+    }
+
+    Assert.assertEquals(99 * 100 / 2, DistributedCounters.get(hTable, counter1, CF, QUAL, keyDistributor));
+    Assert.assertEquals(0, DistributedCounters.get(hTable, Bytes.toBytes("no-counter"), CF, QUAL, keyDistributor));
+
+    List<byte[]> counters = new ArrayList<byte[]>();
+    counters.add(counter1);
+    counters.add(counter2);
+    counters.add(Bytes.toBytes("no-counter"));
+    Map<byte[], Long> values = DistributedCounters.get(hTable, counters, CF, QUAL, keyDistributor);
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals(Long.valueOf(99 * 100 / 2), values.get(counter1));
+    Assert.assertEquals(Long.valueOf(100), values.get(counter2));
+
+    // increments are spread over the shards
+    if (keyDistributor.getAllDistributedKeys(counter2).length > 1) {
+      Assert.assertTrue(DistributedGets.getAll(hTable, new Get(counter2), keyDistributor).length > 1);
+    }
+  }
+
   /** Test scan with start and stop key. */
   @Test
   public void testMapReduceBounded() throws IOException, InterruptedException, ClassNotFoundException {
@@ -127,6 +473,43 @@ public abstract class RowKeyDistributorTestBase {
     testMapReduceInternal(origKeyPrefix, new Scan(), 500, 500, 0, 999);
   }
 
+  /** Test scan with splits combined into fewer map tasks, combined splits are read in parallel. */
+  @Test
+  public void testMapReduceCombinedSplits() throws IOException, InterruptedException, ClassNotFoundException {
+    testingUtility.getConfiguration().setInt(WdTableInputFormat.MAX_MAP_TASKS, 2);
+    testingUtility.getConfiguration().setBoolean(WdTableInputFormat.COMBINED_SPLIT_PARALLEL, true);
+    long origKeyPrefix = System.currentTimeMillis();
+    testMapReduceInternal(origKeyPrefix, new Scan(), 500, 500, 0, 999);
+  }
+
+  /** Test scan with splits covering sub-ranges of original keys, rows are fed to mappers ordered by original keys. */
+  @Test
+  public void testMapReduceOrderedSplits() throws IOException, InterruptedException, ClassNotFoundException {
+    testingUtility.getConfiguration().setBoolean(WdTableInputFormat.ORDERED_SPLITS, true);
+    testingUtility.getConfiguration().setInt(WdTableInputFormat.ORDERED_SPLITS_COUNT, 3);
+    long origKeyPrefix = System.currentTimeMillis();
+
+    int seekIntervalMinValue = 100;
+    int seekIntervalMaxValue = 899;
+    byte[] startKey = Bytes.toBytes(origKeyPrefix + seekIntervalMinValue);
+    byte[] stopKey = Bytes.toBytes(origKeyPrefix + seekIntervalMaxValue + 1);
+    Scan scan = new Scan(startKey, stopKey);
+    Job job = testMapReduceInternal(origKeyPrefix, scan, 500, 500, seekIntervalMinValue, seekIntervalMaxValue,
+            OrderCheckingMapper.class);
+    Assert.assertEquals(0, job.getCounters().findCounter(OrderCheckingMapper.OrderCounters.UNORDERED).getValue());
+  }
+
+  /** Test scan with original keys handed to mappers. */
+  @Test
+  public void testMapReduceOriginalKeys() throws IOException, InterruptedException, ClassNotFoundException {
+    testingUtility.getConfiguration().setBoolean(WdTableInputFormat.ORIGINAL_KEYS, true);
+    long origKeyPrefix = System.currentTimeMillis();
+    testingUtility.getConfiguration().setLong(OriginalKeyCheckingMapper.ORIG_KEY_PREFIX, origKeyPrefix);
+    Job job = testMapReduceInternal(origKeyPrefix, new Scan(), 500, 500, 0, 999, OriginalKeyCheckingMapper.class);
+    Assert.assertEquals(0,
+            job.getCounters().findCounter(OriginalKeyCheckingMapper.KeyCounters.WRONG_KEY).getValue());
+  }
+
   private int writeTestData(long origKeyPrefix, int numRows, int rowKeySeed,
                             int seekIntervalMinValue, int seekIntervalMaxValue) throws IOException {
     int valuesCountInSeekInterval = 0;
@@ -171,6 +554,14 @@ public abstract class RowKeyDistributorTestBase {
   private void testMapReduceInternal(long origKeyPrefix, Scan scan, int numValues, int startWithValue,
                                      int seekIntervalMinValue, int seekIntervalMaxValue)
           throws IOException, InterruptedException, ClassNotFoundException {
+    testMapReduceInternal(origKeyPrefix, scan, numValues, startWithValue, seekIntervalMinValue, seekIntervalMaxValue,
+            RowCounterMapper.class);
+  }
+
+  private Job testMapReduceInternal(long origKeyPrefix, Scan scan, int numValues, int startWithValue,
+                                    int seekIntervalMinValue, int seekIntervalMaxValue,
+                                    Class<? extends RowCounterMapper> mapperClass)
+          throws IOException, InterruptedException, ClassNotFoundException {
     int valuesCountInSeekInterval =
             writeTestData(origKeyPrefix, numValues, startWithValue, seekIntervalMinValue, seekIntervalMaxValue);
 
@@ -179,7 +570,7 @@ public abstract class RowKeyDistributorTestBase {
     Job job = new Job(conf, "testMapReduceInternal()-Job");
     job.setJarByClass(this.getClass());
     TableMapReduceUtil.initTableMapperJob(TABLE_NAME, scan,
-            RowCounterMapper.class, ImmutableBytesWritable.class, Result.class, job);
+            mapperClass, ImmutableBytesWritable.class, Result.class, job);
 
     // Substituting standard TableInputFormat which was set in TableMapReduceUtil.initTableMapperJob(...)
     job.setInputFormatClass(WdTableInputFormat.class);
@@ -193,6 +584,8 @@ public abstract class RowKeyDistributorTestBase {
 
     long mapInputRecords = job.getCounters().findCounter(RowCounterMapper.Counters.ROWS).getValue();
     Assert.assertEquals(valuesCountInSeekInterval, mapInputRecords);
+
+    return job;
   }
 
   /**
@@ -213,4 +606,44 @@ public abstract class RowKeyDistributorTestBase {
       }
     }
   }
+
+  /**
+   * Mapper that runs the count and checks that rows come ordered by original keys (test data values grow with them).
+   */
+  static class OrderCheckingMapper extends RowCounterMapper {
+    /** Counter enumeration to count rows which came out of order. */
+    public static enum OrderCounters {UNORDERED}
+
+    private int previousValue = Integer.MIN_VALUE;
+
+    @Override
+    public void map(ImmutableBytesWritable row, Result values, Context context) throws IOException {
+      int value = Bytes.toInt(values.getValue(CF, QUAL));
+      if (value < previousValue) {
+        context.getCounter(OrderCounters.UNORDERED).increment(1);
+      }
+      previousValue = value;
+      super.map(row, values, context);
+    }
+  }
+
+  /**
+   * Mapper that runs the count and checks that keys are original ones (test data original key is prefix + value).
+   */
+  static class OriginalKeyCheckingMapper extends RowCounterMapper {
+    static final String ORIG_KEY_PREFIX = "test.wd.orig.key.prefix";
+
+    /** Counter enumeration to count rows with wrong keys. */
+    public static enum KeyCounters {WRONG_KEY}
+
+    @Override
+    public void map(ImmutableBytesWritable row, Result values, Context context) throws IOException {
+      byte[] expected = Bytes.toBytes(context.getConfiguration().getLong(ORIG_KEY_PREFIX, 0)
+              + Bytes.toInt(values.getValue(CF, QUAL)));
+      if (Bytes.compareTo(expected, 0, expected.length, row.get(), row.getOffset(), row.getLength()) != 0) {
+        context.getCounter(KeyCounters.WRONG_KEY).increment(1);
+      }
+      super.map(row, values, context);
+    }
+  }
 }
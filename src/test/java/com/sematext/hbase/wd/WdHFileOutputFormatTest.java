@@ -0,0 +1,175 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WdHFileOutputFormatTest {
+  private static final byte[] CF = Bytes.toBytes("colfam");
+  private static final AbstractRowKeyDistributor KEY_DISTRIBUTOR =
+          new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(4));
+
+  private static Configuration createConf() {
+    Configuration conf = new Configuration();
+    KEY_DISTRIBUTOR.addInfo(conf);
+    // region per bucket
+    WdHFilePartitioner.setRegionStartKeys(conf, new byte[][] {
+            new byte[] {2}, HConstants.EMPTY_START_ROW, new byte[] {3}, new byte[] {1}});
+    return conf;
+  }
+
+  @Test
+  public void testPartitioner() {
+    WdHFilePartitioner<Object> partitioner = new WdHFilePartitioner<Object>();
+    partitioner.setConf(createConf());
+
+    for (int i = 0; i < 100; i++) {
+      byte[] originalKey = Bytes.toBytes("key" + i);
+      byte[] distributedKey = KEY_DISTRIBUTOR.getDistributedKey(originalKey);
+      Assert.assertEquals(distributedKey[0],
+              partitioner.getPartition(new ImmutableBytesWritable(originalKey), null, 4));
+      // key as a view into a larger array
+      byte[] buffer = Bytes.add(new byte[] {9, 9}, originalKey);
+      Assert.assertEquals(distributedKey[0], partitioner.getPartition(
+              new ImmutableBytesWritable(buffer, 2, originalKey.length), null, 4));
+    }
+  }
+
+  @Test
+  public void testSortComparator() throws IOException {
+    WdDistributedKeyComparator comparator = new WdDistributedKeyComparator();
+    comparator.setConf(createConf());
+
+    List<ImmutableBytesWritable> keys = new ArrayList<ImmutableBytesWritable>();
+    for (int i = 0; i < 100; i++) {
+      keys.add(new ImmutableBytesWritable(Bytes.toBytes("key" + i)));
+    }
+    Collections.sort(keys, comparator);
+
+    for (int i = 1; i < keys.size(); i++) {
+      byte[] previous = keys.get(i - 1).get();
+      byte[] current = keys.get(i).get();
+      Assert.assertTrue(Bytes.compareTo(KEY_DISTRIBUTOR.getDistributedKey(previous),
+              KEY_DISTRIBUTOR.getDistributedKey(current)) < 0);
+
+      byte[] serializedPrevious = serialize(keys.get(i - 1));
+      byte[] serializedCurrent = serialize(keys.get(i));
+      Assert.assertTrue(comparator.compare(serializedPrevious, 0, serializedPrevious.length,
+              serializedCurrent, 0, serializedCurrent.length) < 0);
+      Assert.assertTrue(comparator.compare(serializedCurrent, 0, serializedCurrent.length,
+              serializedPrevious, 0, serializedPrevious.length) > 0);
+    }
+  }
+
+  @Test
+  public void testRecordWriter() throws IOException, InterruptedException {
+    Configuration conf = createConf();
+    Path outputPath = new Path(System.getProperty("test.build.data", "target/test-data"), "wd-hfile-output");
+    FileSystem fs = FileSystem.getLocal(conf);
+    fs.delete(outputPath, true);
+    Job job = new Job(conf, "bulk load");
+    FileOutputFormat.setOutputPath(job, outputPath);
+    TaskAttemptContext context =
+            new TaskAttemptContext(job.getConfiguration(), new TaskAttemptID("test", 1, false, 0, 0));
+
+    // map output keys as sorted by the shuffle
+    List<ImmutableBytesWritable> keys = new ArrayList<ImmutableBytesWritable>();
+    for (int i = 0; i < 100; i++) {
+      keys.add(new ImmutableBytesWritable(Bytes.toBytes("key" + i)));
+    }
+    WdDistributedKeyComparator comparator = new WdDistributedKeyComparator();
+    comparator.setConf(conf);
+    Collections.sort(keys, comparator);
+
+    RecordWriter<ImmutableBytesWritable, KeyValue> writer = new WdHFileOutputFormat().getRecordWriter(context);
+    for (int i = 0; i < keys.size(); i++) {
+      byte[] originalKey = keys.get(i).get();
+      writer.write(keys.get(i), new KeyValue(originalKey, CF, Bytes.toBytes("q1"), Bytes.toBytes(i)));
+      writer.write(keys.get(i), new KeyValue(originalKey, CF, Bytes.toBytes("q2"), Bytes.toBytes(i)));
+      if (i == keys.size() / 2) {
+        // rolling the files
+        writer.write(null, null);
+      }
+    }
+    writer.close(context);
+
+    Set<String> originalKeys = new HashSet<String>();
+    int kvsCount = 0;
+    FileStatus[] files = fs.listStatus(new Path(new FileOutputCommitter(outputPath, context).getWorkPath(),
+            Bytes.toString(CF)));
+    Assert.assertEquals(2, files.length);
+    for (FileStatus file : files) {
+      HFile.Reader reader = new HFile.Reader(fs, file.getPath(), null, false);
+      reader.loadFileInfo();
+      HFileScanner scanner = reader.getScanner(false, false);
+      Assert.assertTrue(scanner.seekTo());
+      KeyValue previous = null;
+      do {
+        KeyValue kv = scanner.getKeyValue();
+        byte[] row = kv.getRow();
+        Assert.assertArrayEquals(KEY_DISTRIBUTOR.getDistributedKey(KEY_DISTRIBUTOR.getOriginalKey(row)), row);
+        if (previous != null) {
+          Assert.assertTrue(KeyValue.COMPARATOR.compare(previous, kv) < 0);
+        }
+        originalKeys.add(Bytes.toString(KEY_DISTRIBUTOR.getOriginalKey(row)));
+        previous = kv;
+        kvsCount++;
+      } while (scanner.next());
+      reader.close();
+    }
+    Assert.assertEquals(100, originalKeys.size());
+    Assert.assertEquals(200, kvsCount);
+    fs.delete(outputPath, true);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRoundRobinDistributorRejected() throws IOException {
+    WdHFileOutputFormat.configureIncrementalLoad(new Job(new Configuration(), "bulk load"), null,
+            new RowKeyDistributorByOneBytePrefix((byte) 4));
+  }
+
+  private static byte[] serialize(ImmutableBytesWritable key) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    key.write(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2010 Sematext International
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sematext.hbase.wd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerAddress;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests computing splits of {@link WdTableInputFormat} without a cluster
+ */
+public class WdTableInputFormatTest {
+  private static final byte[] TABLE = Bytes.toBytes("table");
+
+  // regions: [, 1) on host0, [1, 1 50) on host1, [1 50, 2) on host2, [2, ) on host3
+  static Map<HRegionInfo, HServerAddress> createRegions() {
+    byte[][] boundaries = new byte[][] {HConstants.EMPTY_START_ROW, new byte[] {1}, new byte[] {1, 50}, new byte[] {2},
+            HConstants.EMPTY_END_ROW};
+    HTableDescriptor desc = new HTableDescriptor(TABLE);
+    Map<HRegionInfo, HServerAddress> regions = new TreeMap<HRegionInfo, HServerAddress>();
+    for (int i = 0; i < boundaries.length - 1; i++) {
+      regions.put(new HRegionInfo(desc, boundaries[i], boundaries[i + 1]), new HServerAddress("host" + i, 60020));
+    }
+    return regions;
+  }
+
+  @Test
+  public void testFullScanSplits() {
+    AbstractRowKeyDistributor keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 3);
+    List<InputSplit> splits = new WdTableInputFormat().getSplits(TABLE,
+            keyDistributor.getDistributedIntervals(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW),
+            createRegions());
+
+    // bucket 0: [0, 1) in region 0; bucket 1: [1, 1 50), [1 50, 2); bucket 2: [2, )
+    Assert.assertEquals(4, splits.size());
+    assertSplit(new byte[] {0}, new byte[] {1}, "host0", splits.get(0));
+    assertSplit(new byte[] {1}, new byte[] {1, 50}, "host1", splits.get(1));
+    assertSplit(new byte[] {1, 50}, new byte[] {2}, "host2", splits.get(2));
+    assertSplit(new byte[] {2}, HConstants.EMPTY_END_ROW, "host3", splits.get(3));
+  }
+
+  @Test
+  public void testRangeScanSplits() {
+    AbstractRowKeyDistributor keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 3);
+    List<InputSplit> splits = new WdTableInputFormat().getSplits(TABLE,
+            keyDistributor.getDistributedIntervals(new byte[] {40}, new byte[] {60}), createRegions());
+
+    Assert.assertEquals(4, splits.size());
+    assertSplit(new byte[] {0, 40}, new byte[] {0, 60}, "host0", splits.get(0));
+    assertSplit(new byte[] {1, 40}, new byte[] {1, 50}, "host1", splits.get(1));
+    assertSplit(new byte[] {1, 50}, new byte[] {1, 60}, "host2", splits.get(2));
+    assertSplit(new byte[] {2, 40}, new byte[] {2, 60}, "host3", splits.get(3));
+  }
+
+  @Test
+  public void testRegionInTransition() {
+    Map<HRegionInfo, HServerAddress> regions = createRegions();
+    for (Map.Entry<HRegionInfo, HServerAddress> region : regions.entrySet()) {
+      if (Bytes.equals(region.getKey().getStartKey(), new byte[] {1})) {
+        // region which is not assigned
+        region.setValue(new HServerAddress());
+      }
+    }
+    AbstractRowKeyDistributor keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 3);
+    List<InputSplit> splits = new WdTableInputFormat().getSplits(TABLE,
+            keyDistributor.getDistributedIntervals(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW), regions);
+
+    Assert.assertEquals(4, splits.size());
+    assertSplit(new byte[] {1}, new byte[] {1, 50}, "", splits.get(1));
+    assertSplit(new byte[] {1, 50}, new byte[] {2}, "host2", splits.get(2));
+  }
+
+  @Test
+  public void testCombine() throws IOException, InterruptedException {
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+    for (int i = 0; i < 10; i++) {
+      // splits on host0 and host1 alternate
+      splits.add(new TableSplit(TABLE, new byte[] {(byte) i}, new byte[] {(byte) (i + 1)}, "host" + (i % 2)));
+    }
+
+    List<InputSplit> combined = WdTableInputFormat.combine(splits, 3);
+    Assert.assertEquals(3, combined.size());
+    int total = 0;
+    for (InputSplit split : combined) {
+      WdCombinedTableSplit combinedSplit = serializeDeserialize((WdCombinedTableSplit) split);
+      Assert.assertTrue(combinedSplit.getSplits().size() >= 3 && combinedSplit.getSplits().size() <= 4);
+      total += combinedSplit.getSplits().size();
+    }
+    Assert.assertEquals(10, total);
+
+    // splits are grouped by location
+    Assert.assertArrayEquals(new String[] {"host0"}, combined.get(0).getLocations());
+    Assert.assertArrayEquals(new String[] {"host1"}, combined.get(2).getLocations());
+    // second one holds 2 splits on host0 and 1 on host1
+    Assert.assertArrayEquals(new String[] {"host0", "host1"}, combined.get(1).getLocations());
+  }
+
+  private static WdCombinedTableSplit serializeDeserialize(WdCombinedTableSplit split) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write(new DataOutputStream(bytes));
+    WdCombinedTableSplit deserialized = new WdCombinedTableSplit();
+    deserialized.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(split.getSplits(), deserialized.getSplits());
+    return deserialized;
+  }
+
+  @Test
+  public void testBoundaries() {
+    List<byte[]> samples = new ArrayList<byte[]>();
+    for (int i = 9; i >= 0; i--) {
+      samples.add(new byte[] {(byte) (i * 10)});
+    }
+
+    // samples out of range and range start are skipped, boundaries are sorted
+    List<byte[]> boundaries = WdTableInputFormat.getBoundaries(samples, new byte[] {0}, new byte[] {75}, 3);
+    Assert.assertEquals(2, boundaries.size());
+    Assert.assertArrayEquals(new byte[] {30}, boundaries.get(0));
+    Assert.assertArrayEquals(new byte[] {50}, boundaries.get(1));
+
+    // not enough samples: bounded range is split evenly
+    boundaries = WdTableInputFormat.getBoundaries(samples, new byte[] {0}, new byte[] {15}, 3);
+    Assert.assertEquals(2, boundaries.size());
+    Assert.assertArrayEquals(new byte[] {5}, boundaries.get(0));
+    Assert.assertArrayEquals(new byte[] {10}, boundaries.get(1));
+
+    // not enough samples, unbounded range: range is split evenly up to the largest key
+    boundaries = WdTableInputFormat.getBoundaries(samples, new byte[] {85}, HConstants.EMPTY_END_ROW, 3);
+    Assert.assertEquals(2, boundaries.size());
+    Assert.assertArrayEquals(new byte[] {(byte) 141, (byte) 255}, boundaries.get(0));
+    Assert.assertArrayEquals(new byte[] {(byte) 198, (byte) 254}, boundaries.get(1));
+
+    // no samples at all
+    boundaries = WdTableInputFormat.getBoundaries(new ArrayList<byte[]>(), HConstants.EMPTY_START_ROW,
+            HConstants.EMPTY_END_ROW, 4);
+    Assert.assertEquals(3, boundaries.size());
+    Assert.assertArrayEquals(new byte[] {63}, boundaries.get(0));
+    Assert.assertArrayEquals(new byte[] {126}, boundaries.get(1));
+    Assert.assertArrayEquals(new byte[] {(byte) 189}, boundaries.get(2));
+
+    Assert.assertTrue(WdTableInputFormat.getBoundaries(samples, HConstants.EMPTY_START_ROW,
+            HConstants.EMPTY_END_ROW, 1).isEmpty());
+  }
+
+  @Test
+  public void testOrderedSplitsOfBucketAlignedTable() {
+    // regions start keys are buckets prefixes, they hold no original keys to sample
+    AbstractRowKeyDistributor keyDistributor = new RowKeyDistributorByOneBytePrefix((byte) 4);
+    byte[][] splitKeys = DistributedTables.getSplitKeys(keyDistributor, 4);
+    HTableDescriptor desc = new HTableDescriptor(TABLE);
+    Map<HRegionInfo, HServerAddress> regions = new TreeMap<HRegionInfo, HServerAddress>();
+    for (int i = 0; i <= splitKeys.length; i++) {
+      byte[] startKey = i == 0 ? HConstants.EMPTY_START_ROW : splitKeys[i - 1];
+      byte[] endKey = i == splitKeys.length ? HConstants.EMPTY_END_ROW : splitKeys[i];
+      regions.put(new HRegionInfo(desc, startKey, endKey), new HServerAddress("host" + i, 60020));
+    }
+
+    List<InputSplit> splits =
+            new WdTableInputFormat().getOrderedSplits(TABLE, new Scan(), regions, keyDistributor, 4);
+    Assert.assertEquals(4, splits.size());
+    byte[][] boundaries = new byte[][] {HConstants.EMPTY_START_ROW, new byte[] {63}, new byte[] {126},
+            new byte[] {(byte) 189}, HConstants.EMPTY_END_ROW};
+    for (int i = 0; i < splits.size(); i++) {
+      Assert.assertTrue(splits.get(i) instanceof WdOrderedTableSplit);
+      TableSplit split = (TableSplit) splits.get(i);
+      Assert.assertArrayEquals(boundaries[i], split.getStartRow());
+      Assert.assertArrayEquals(boundaries[i + 1], split.getEndRow());
+    }
+  }
+
+  private static void assertSplit(byte[] startRow, byte[] stopRow, String location, InputSplit split) {
+    TableSplit tableSplit = (TableSplit) split;
+    Assert.assertArrayEquals(TABLE, tableSplit.getTableName());
+    Assert.assertArrayEquals(startRow, tableSplit.getStartRow());
+    Assert.assertArrayEquals(stopRow, tableSplit.getEndRow());
+    Assert.assertEquals(location, tableSplit.getRegionLocation());
+  }
+}